@@ -0,0 +1,146 @@
+package edu.utexas.ece.sa.tools.parser;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import edu.illinois.cs.testrunner.configuration.Configuration;
+import edu.utexas.ece.sa.tools.utility.Timeline;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed test sources shared by every {@link JavaFile} loaded in the process, so each source is parsed once per
+ * change instead of once per load.
+ *
+ * Entries are keyed by path and checked against the file's modification time and size; if those changed, the
+ * content hash decides whether to parse again. Callers always get a clone, since JavaFile edits its AST in place.
+ * The least recently used entries are evicted once the estimated size passes parser.cache.astMegabytes.
+ */
+public class CompilationUnitCache {
+    // Rough size of a parsed AST (nodes, tokens and ranges) per character of source
+    private static final long BYTES_PER_SOURCE_CHAR = 40;
+
+    private static CompilationUnitCache cache;
+
+    public static synchronized CompilationUnitCache cache() {
+        if (cache == null) {
+            cache = new CompilationUnitCache(
+                    Configuration.config().getProperty("parser.cache.ast", true),
+                    Configuration.config().getProperty("parser.cache.astMegabytes", 64) * 1024L * 1024L);
+        }
+        return cache;
+    }
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    private CompilationUnitCache(final boolean enabled, final long maxBytes) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return A fresh copy of the parsed source, which the caller is free to modify.
+     */
+    public synchronized CompilationUnit parse(final Path path) throws IOException {
+        if (!enabled) {
+            try (Timeline.Span span = Timeline.start("parse", path.getFileName().toString())) {
+                return JavaParser.parse(path);
+            }
+        }
+
+        final Path key = path.toAbsolutePath();
+        final BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        final long modified = attributes.lastModifiedTime().toMillis();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.modified == modified && entry.size == attributes.size()) {
+            hits++;
+            return entry.unit.clone();
+        }
+
+        final byte[] bytes = Files.readAllBytes(key);
+        final HashCode hash = Hashing.murmur3_128().hashBytes(bytes);
+        if (entry != null && entry.hash.equals(hash)) {
+            // Touched, but not changed
+            hits++;
+            entry.modified = modified;
+            entry.size = attributes.size();
+            return entry.unit.clone();
+        }
+
+        misses++;
+        final String source = new String(bytes, StandardCharsets.UTF_8);
+        final CompilationUnit unit;
+        try (Timeline.Span span = Timeline.start("parse", path.getFileName().toString())) {
+            unit = JavaParser.parse(source);
+        }
+        remove(key);
+        entry = new Entry(unit, modified, attributes.size(), hash, source.length() * BYTES_PER_SOURCE_CHAR);
+        entries.put(key, entry);
+        totalBytes += entry.bytes;
+        evict();
+        return unit.clone();
+    }
+
+    /**
+     * Drops the parsed copy of a file that is being overwritten.
+     */
+    public synchronized void invalidate(final Path path) {
+        remove(path.toAbsolutePath());
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized String summary() {
+        return entries.size() + " SOURCES CACHED (~" + totalBytes / (1024 * 1024) + " MB), "
+                + hits + " HITS, " + misses + " MISSES";
+    }
+
+    private void remove(final Path key) {
+        final Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.bytes;
+        }
+    }
+
+    // Always keeps the most recent entry, even if it alone is over the bound
+    private void evict() {
+        final Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1 && iterator.hasNext()) {
+            totalBytes -= iterator.next().getValue().bytes;
+            iterator.remove();
+        }
+    }
+
+    private static class Entry {
+        private final CompilationUnit unit;
+        private long modified;
+        private long size;
+        private final HashCode hash;
+        private final long bytes;
+
+        private Entry(final CompilationUnit unit, final long modified, final long size, final HashCode hash,
+                      final long bytes) {
+            this.unit = unit;
+            this.modified = modified;
+            this.size = size;
+            this.hash = hash;
+            this.bytes = bytes;
+        }
+    }
+}
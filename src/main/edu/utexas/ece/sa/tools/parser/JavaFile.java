@@ -3,13 +3,20 @@ package edu.utexas.ece.sa.tools.parser;
 import com.github.javaparser.JavaParser;
 import com.github.javaparser.Position;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.PackageDeclaration;
 import com.github.javaparser.ast.body.*;
 import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.observer.AstObserver;
+import com.github.javaparser.ast.observer.AstObserverAdapter;
+import com.github.javaparser.ast.observer.ObservableProperty;
 import com.github.javaparser.ast.visitor.ModifierVisitor;
 import com.github.javaparser.ast.visitor.Visitable;
 import com.google.common.base.Preconditions;
+import edu.illinois.cs.testrunner.configuration.Configuration;
+import edu.utexas.ece.sa.tools.utility.Timeline;
 
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
@@ -31,9 +38,123 @@ import java.util.stream.Collectors;
  */
 public class JavaFile {
     public static JavaFile loadFile(final Path path, final String classpath, final Path compiledOutputDir, final String simpleName, final String extensions) throws IOException {
+        flushPendingWrite(path);
         return new JavaFile(path, classpath, compiledOutputDir).loadClassList(simpleName, extensions);
     }
 
+    // With parser.write.deferred, writeAndReloadCompilationUnit keeps the new source in memory until a commit point
+    private static final boolean DEFERRED_WRITES = Configuration.config().getProperty("parser.write.deferred", true);
+    private static final Map<Path, String> pendingWrites = new LinkedHashMap<>();
+
+    /**
+     * Writes every deferred source to disk. Call before anything reads the sources from disk, such as a compilation.
+     */
+    public static synchronized void flushPendingWrites() throws IOException {
+        for (final Map.Entry<Path, String> pending : new ArrayList<>(pendingWrites.entrySet())) {
+            writeSource(pending.getKey(), pending.getValue());
+            pendingWrites.remove(pending.getKey());
+        }
+    }
+
+    public static synchronized void flushPendingWrite(final Path path) throws IOException {
+        final String source = pendingWrites.remove(path.toAbsolutePath());
+        if (source != null) {
+            writeSource(path.toAbsolutePath(), source);
+        }
+    }
+
+    // For when the file is about to be overwritten on disk, which makes the deferred source outdated
+    public static synchronized void discardPendingWrite(final Path path) {
+        pendingWrites.remove(path.toAbsolutePath());
+    }
+
+    private static synchronized void deferWrite(final Path path, final String source) {
+        pendingWrites.put(path.toAbsolutePath(), source);
+    }
+
+    // Leaves the file (and its modification time) alone if it already has this content
+    private static void writeSource(final Path path, final String source) throws IOException {
+        final byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        if (!Files.exists(path) || !Arrays.equals(Files.readAllBytes(path), bytes)) {
+            CompilationUnitCache.cache().invalidate(path);
+            Files.write(path, bytes);
+        }
+        // Backups (*.orig) are written too, but never compiled
+        if (path.getFileName().toString().endsWith(".java")) {
+            modifiedSources.add(path.toAbsolutePath());
+        }
+    }
+
+    // Sources written since they were last compiled, so that only these need to be compiled again
+    private static final Set<Path> modifiedSources = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    /**
+     * Compiles the sources written since the last compilation into the test output directory, without going through
+     * Maven. Only test sources are compiled this way; anything else is left for a full build.
+     * @return Whether every modified source compiled.
+     */
+    public static boolean compileModifiedSources(final String classpath, final Path testSourceDir,
+                                                 final Path testOutputDir) throws IOException {
+        flushPendingWrites();
+        final List<Path> sources;
+        synchronized (modifiedSources) {
+            sources = new ArrayList<>(modifiedSources);
+        }
+        if (sources.isEmpty()) {
+            return true;
+        }
+        for (final Path source : sources) {
+            if (!Files.exists(source) || !source.startsWith(testSourceDir.toAbsolutePath())) {
+                System.out.println("[INFO] Cannot compile " + source + " in process");
+                return false;
+            }
+        }
+
+        System.out.println("[INFO] Compiling " + sources.size() + " changed sources to " + testOutputDir);
+        final DiagnosticCollector<JavaFileObject> diagnostics = compileSources(
+                sources.stream().map(Path::toFile).collect(Collectors.toList()), classpath, testOutputDir);
+        if (countDiagnostics(diagnostics, Diagnostic.Kind.ERROR) > 0) {
+            diagnostics.getDiagnostics().stream()
+                    .filter(diag -> diag.getKind().equals(Diagnostic.Kind.ERROR))
+                    .forEach(diag -> System.out.println("[ERROR] " + diag));
+            return false;
+        }
+        modifiedSources.removeAll(sources);
+        return true;
+    }
+
+    // After a full build every source is up to date
+    public static void clearModifiedSources() {
+        modifiedSources.clear();
+    }
+
+    /**
+     * Compiles the files, into the output directory if given and next to the sources otherwise.
+     */
+    public static DiagnosticCollector<JavaFileObject> compileSources(final Collection<File> files,
+                                                                     final String classpath,
+                                                                     final Path outputDir) throws IOException {
+        final JavaCompiler javaCompiler = ToolProvider.getSystemJavaCompiler();
+        final List<String> compilerOptions =
+                new ArrayList<>(Arrays.asList("-classpath", classpath, "-encoding", "UTF-8"));
+        if (outputDir != null) {
+            compilerOptions.addAll(Arrays.asList("-d", outputDir.toString()));
+        }
+
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+        try (final StandardJavaFileManager fileManager =
+                     javaCompiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            final Iterable<? extends JavaFileObject> fileObjects = fileManager.getJavaFileObjectsFromFiles(files);
+
+            final JavaCompiler.CompilationTask compilationTask =
+                    javaCompiler.getTask(null, fileManager, diagnostics, compilerOptions, null, fileObjects);
+            compilationTask.call();
+        }
+
+        return diagnostics;
+    }
+
     public static int countDiagnostics(final DiagnosticCollector<JavaFileObject> diagnostics,
                                        final Diagnostic.Kind kind) {
         return Math.toIntExact(diagnostics.getDiagnostics().stream().filter(diag -> diag.getKind().equals(kind)).count());
@@ -52,6 +173,54 @@ public class JavaFile {
     private ClassOrInterfaceDeclaration curCI = null;
     private int curIndex = 0;
 
+    // Lookup tables over the members of classList, built on first use and kept up to date by addMethod and
+    // removeMethod; any other change to names, annotations or members marks them stale (see astObserver)
+    private final Map<String, List<MethodDeclaration>> methodsByQualifiedName = new HashMap<>();
+    private final Map<String, List<MethodDeclaration>> methodsByAnnotation = new HashMap<>();
+    private final Map<String, FieldDeclaration> fieldsBySimpleName = new HashMap<>();
+    private boolean indexed = false;
+    private boolean updatingIndex = false;
+    // Whether the AST differs from the source it was last parsed from
+    private boolean astChanged = false;
+    private final AstObserver astObserver = new AstObserverAdapter() {
+        @Override
+        public void propertyChange(final Node observedNode, final ObservableProperty property,
+                                   final Object oldValue, final Object newValue) {
+            astChanged = true;
+            if (INDEXED_PROPERTIES.contains(property) && (affectsIndex(observedNode) ||
+                    observedNode.getParentNode().map(JavaFile::affectsIndex).orElse(false))) {
+                invalidateIndex();
+            }
+        }
+
+        @Override
+        public void listChange(final NodeList observedNode, final ListChangeType type, final int index,
+                               final Node nodeAddedOrRemoved) {
+            astChanged = true;
+            if (affectsIndex(nodeAddedOrRemoved)) {
+                invalidateIndex();
+            }
+        }
+
+        @Override
+        public void listReplacement(final NodeList observedNode, final int index, final Node oldNode,
+                                    final Node newNode) {
+            astChanged = true;
+            if (affectsIndex(oldNode) || affectsIndex(newNode)) {
+                invalidateIndex();
+            }
+        }
+    };
+
+    private static final Set<ObservableProperty> INDEXED_PROPERTIES = EnumSet.of(ObservableProperty.NAME,
+            ObservableProperty.IDENTIFIER, ObservableProperty.ANNOTATIONS, ObservableProperty.MEMBERS,
+            ObservableProperty.VARIABLES, ObservableProperty.PACKAGE_DECLARATION, ObservableProperty.TYPES);
+
+    private static boolean affectsIndex(final Node node) {
+        return node instanceof BodyDeclaration || node instanceof VariableDeclarator ||
+                node instanceof AnnotationExpr || node instanceof PackageDeclaration;
+    }
+
     private JavaFile(final Path path, final String classPath, final Path compiledOutputDir) {
         this.path = path;
         this.classPath = classPath;
@@ -106,18 +275,27 @@ public class JavaFile {
      * Finds all classes/interfaces in the file and saves them.
      */
     private JavaFile loadClassList(final String simpleName, final String extensions) throws IOException {
+        return loadClassList(simpleName, extensions, CompilationUnitCache.cache().parse(path));
+    }
+
+    private JavaFile loadClassList(final String simpleName, final String extensions,
+                                   final CompilationUnit parsedUnit) {
         this.simpleName = simpleName;
         this.extensions = extensions;
-        compilationUnit = JavaParser.parse(path);
+        compilationUnit = parsedUnit;
+        astChanged = false;
 
         classList.clear();
         classList.addAll(compilationUnit.findAll(ClassOrInterfaceDeclaration.class));
+        invalidateIndex();
 
         for (ClassOrInterfaceDeclaration coi : classList) {
             // System.out.println("CLASS: " + coi.getNameAsString() + " " + simpleName);
             if (coi.getNameAsString().equals(simpleName)) {
                 coi.setName(simpleName + "" + extensions);
                 curCI = coi;
+                // The renamed class still has to be written out, even if nothing else changes
+                astChanged = !extensions.isEmpty();
                 break;
             }
         }
@@ -140,10 +318,69 @@ public class JavaFile {
                 classToTestMethods.put(classDec, testMethods);
             }
         });
+        compilationUnit.register(astObserver, Node.ObserverRegistrationMode.SELF_PROPAGATING);
 
         return this;
     }
 
+    private void invalidateIndex() {
+        if (!updatingIndex) {
+            indexed = false;
+        }
+    }
+
+    private void ensureIndexed() {
+        if (indexed) {
+            return;
+        }
+        methodsByQualifiedName.clear();
+        methodsByAnnotation.clear();
+        fieldsBySimpleName.clear();
+        for (final ClassOrInterfaceDeclaration classDeclaration : classList) {
+            for (final BodyDeclaration bodyDeclaration : classDeclaration.getMembers()) {
+                if (bodyDeclaration instanceof MethodDeclaration) {
+                    indexMethod((MethodDeclaration) bodyDeclaration, classDeclaration);
+                } else if (bodyDeclaration instanceof FieldDeclaration) {
+                    final FieldDeclaration field = (FieldDeclaration) bodyDeclaration;
+                    for (final String fieldName : getSimpleFieldName(field, classDeclaration)) {
+                        fieldsBySimpleName.putIfAbsent(fieldName, field);
+                    }
+                }
+            }
+        }
+        indexed = true;
+    }
+
+    // Appends, so that each list keeps the declaration order the linear scans used to return
+    private void indexMethod(final MethodDeclaration method, final ClassOrInterfaceDeclaration classDeclaration) {
+        methodsByQualifiedName.computeIfAbsent(getFullyQualifiedMethodName(method, classDeclaration),
+                name -> new ArrayList<>()).add(method);
+        method.getAnnotations().stream().map(AnnotationExpr::getNameAsString).distinct()
+                .forEach(annotation -> methodsByAnnotation.computeIfAbsent(annotation,
+                        name -> new ArrayList<>()).add(method));
+    }
+
+    private void unindexMethod(final MethodDeclaration method) {
+        for (final ClassOrInterfaceDeclaration classDeclaration : classList) {
+            removeIdentical(methodsByQualifiedName, getFullyQualifiedMethodName(method, classDeclaration), method);
+        }
+        for (final AnnotationExpr annotation : method.getAnnotations()) {
+            removeIdentical(methodsByAnnotation, annotation.getNameAsString(), method);
+        }
+    }
+
+    // Nodes compare structurally, so look for the very same declaration
+    private static void removeIdentical(final Map<String, List<MethodDeclaration>> index, final String key,
+                                        final MethodDeclaration method) {
+        final List<MethodDeclaration> methods = index.get(key);
+        if (methods != null) {
+            methods.removeIf(indexed -> indexed == method);
+            if (methods.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
     public List<ClassOrInterfaceDeclaration> getClassList() {
         return classList;
     }
@@ -163,13 +400,39 @@ public class JavaFile {
     }
 
     private void writeFile() throws IOException {
-        Files.write(path(), compilationUnit.toString().getBytes(StandardCharsets.UTF_8));
+        discardPendingWrite(path());
+        writeSource(path(), compilationUnit.toString());
     }
 
+    /**
+     * Saves the edits and reparses the file, so that positions and the class lists match the new source.
+     *
+     * With deferred writes the new source is kept in memory until {@link #flushPendingWrites()}, and when the AST
+     * has not changed since it was parsed there is nothing to print or reparse at all.
+     */
     public void writeAndReloadCompilationUnit() {
+        writeAndReloadCompilationUnit(false);
+    }
+
+    /**
+     * @param force Whether to write the source even if the AST has not changed, replacing any write still pending
+     *              for the file, such as when the file goes back to an earlier version.
+     */
+    public void writeAndReloadCompilationUnit(final boolean force) {
         try {
-            writeFile();
-            loadClassList(simpleName, extensions);
+            if (!DEFERRED_WRITES) {
+                writeFile();
+                loadClassList(simpleName, extensions);
+                return;
+            }
+            if (!astChanged && !force) {
+                return;
+            }
+            final String source = compilationUnit.toString();
+            deferWrite(path(), source);
+            try (Timeline.Span span = Timeline.start("parse", path.getFileName().toString())) {
+                loadClassList(simpleName, extensions, JavaParser.parse(source));
+            }
         } catch (IOException ioException) {
             ioException.printStackTrace();
         }
@@ -194,94 +457,29 @@ public class JavaFile {
     }
 
     public List<MethodDeclaration> findMethodWithAnnotations(String annotationName) {
-        List<MethodDeclaration> mdList = new ArrayList<>();
-        for (final ClassOrInterfaceDeclaration classDeclaration : classList) {
-            for (final BodyDeclaration bodyDeclaration : classDeclaration.getMembers()) {
-                if (bodyDeclaration instanceof MethodDeclaration) {
-                    final MethodDeclaration method = (MethodDeclaration) bodyDeclaration;
-                    // System.out.println(method.getAnnotationByName(annotationName));
-                    if (method.getAnnotationByName(annotationName).isPresent()) {
-                        mdList.add(method);
-                    }
-                }
-            }
-        }
-        return mdList;
+        ensureIndexed();
+        return new ArrayList<>(methodsByAnnotation.getOrDefault(annotationName, Collections.emptyList()));
     }
 
     public MethodDeclaration findMethodDeclaration(final String name) {
-        for (final ClassOrInterfaceDeclaration classDeclaration : classList) {
-            for (final BodyDeclaration bodyDeclaration : classDeclaration.getMembers()) {
-                if (bodyDeclaration instanceof MethodDeclaration) {
-                    final MethodDeclaration method = (MethodDeclaration)bodyDeclaration;
-                    final String fullMethodName = getFullyQualifiedMethodName(method, classDeclaration);
-                    // System.out.println("NAME: " + fullMethodName + " : " + name);
-                    if (fullMethodName.equals(name)) {
-                        return method;
-                    }
-                }
-            }
-        }
-
-        return null;
+        ensureIndexed();
+        final List<MethodDeclaration> methods = methodsByQualifiedName.get(name);
+        return methods == null ? null : methods.get(0);
     }
 
     public MethodDeclaration findTestMethodDeclaration(final String name) {
-        for (final ClassOrInterfaceDeclaration classDeclaration : classList) {
-            for (final BodyDeclaration bodyDeclaration : classDeclaration.getMembers()) {
-                if (bodyDeclaration instanceof MethodDeclaration) {
-                    final MethodDeclaration method = (MethodDeclaration)bodyDeclaration;
-                    final String fullMethodName = getFullyQualifiedMethodName(method, classDeclaration);
-                    // System.out.println("NAME: " + fullMethodName + " : " + name);
-                    for (AnnotationExpr annotationExpr : method.getAnnotations()) {
-                        if (!annotationExpr.getNameAsString().equals("Test")) {
-                            break;
-                        }
-                    }
-                    if (fullMethodName.equals(name)) {
-                        return method;
-                    }
-                }
-            }
-        }
-
-        return null;
+        // Test methods are looked up by name alone, like any other method
+        return findMethodDeclaration(name);
     }
 
     public List<MethodDeclaration> findMethodDeclarations(final String name) {
-        List<MethodDeclaration> list = new LinkedList<>();
-        for (final ClassOrInterfaceDeclaration classDeclaration : classList) {
-            for (final BodyDeclaration bodyDeclaration : classDeclaration.getMembers()) {
-                if (bodyDeclaration instanceof MethodDeclaration) {
-                    final MethodDeclaration method = (MethodDeclaration)bodyDeclaration;
-                    final String fullMethodName = getFullyQualifiedMethodName(method, classDeclaration);
-                    // System.out.println("NAME: " + fullMethodName + " : " + name);
-                    if (fullMethodName.equals(name)) {
-                        list.add(method);
-                    }
-                }
-            }
-        }
-
-        return list;
+        ensureIndexed();
+        return new LinkedList<>(methodsByQualifiedName.getOrDefault(name, Collections.emptyList()));
     }
 
     public FieldDeclaration findFieldDeclaration(final String name) {
-        for (final ClassOrInterfaceDeclaration classDeclaration : classList) {
-            for (final BodyDeclaration bodyDeclaration : classDeclaration.getMembers()) {
-                if (bodyDeclaration instanceof FieldDeclaration) {
-                    final FieldDeclaration field = (FieldDeclaration)bodyDeclaration;
-                    final List<String> fieldNameLists = getSimpleFieldName(field, classDeclaration);
-                    for (String fieldName : fieldNameLists) {
-                        if (fieldName.equals(name)) {
-                            return field;
-                        }
-                    }
-                }
-            }
-        }
-
-        return null;
+        ensureIndexed();
+        return fieldsBySimpleName.get(name);
     }
 
     public FieldDeclaration findFieldWithAnnotations(String annotationName) {
@@ -331,21 +529,7 @@ public class JavaFile {
     }
 
     public List<MethodDeclaration> findMethodsWithAnnotation(String annotation) {
-        List<MethodDeclaration> methods = new ArrayList<>();
-        for (final ClassOrInterfaceDeclaration classDeclaration : classList) {
-            for (final BodyDeclaration bodyDeclaration : classDeclaration.getMembers()) {
-                if (bodyDeclaration instanceof MethodDeclaration) {
-                    final MethodDeclaration method = (MethodDeclaration)bodyDeclaration;
-                    for (AnnotationExpr annotationExpr : method.getAnnotations()) {
-                        if (annotationExpr.getNameAsString().equals(annotation)) {
-                            methods.add(method);
-                            break;
-                        }
-                    }
-                }
-            }
-        }
-        return methods;
+        return findMethodWithAnnotations(annotation);
     }
 
     private List<String> getFullyQualifiedFieldName(FieldDeclaration field, ClassOrInterfaceDeclaration classDec) {
@@ -402,16 +586,22 @@ public class JavaFile {
     public String removeMethod(final MethodDeclaration method) {
         for (final ClassOrInterfaceDeclaration classDeclaration : classList) {
             final MethodRemoverVisitor remover = new MethodRemoverVisitor(method);
+            updatingIndex = true;
             try {
                 classDeclaration.accept(remover, null);
 
                 final Optional<PackageDeclaration> packageDec = compilationUnit.getPackageDeclaration();
 
                 if (remover.succeeded()) {
+                    if (indexed) {
+                        remover.removed().forEach(this::unindexMethod);
+                    }
                     return createRemovedMethodString(packageDec.map(PackageDeclaration::getNameAsString).orElse(""), classDeclaration, method);
                 }
             } catch (Exception exception) {
                 exception.printStackTrace();
+            } finally {
+                updatingIndex = false;
             }
         }
         return null;
@@ -441,7 +631,14 @@ public class JavaFile {
         String methodName = method.substring(method.lastIndexOf('.') + 1);
         for (final ClassOrInterfaceDeclaration classDeclaration : classList) {
             if (classDeclaration.getNameAsString().equals(className)) {
-                return classDeclaration.addMethod(methodName, Modifier.PUBLIC);
+                updatingIndex = true;
+                try {
+                    MethodDeclaration newMethod = classDeclaration.addMethod(methodName, Modifier.PUBLIC);
+                    indexMethod(newMethod, classDeclaration);
+                    return newMethod;
+                } finally {
+                    updatingIndex = false;
+                }
             }
         }
         return null;
@@ -460,9 +657,15 @@ public class JavaFile {
         String methodName = method.substring(method.lastIndexOf('.') + 1);
         for (final ClassOrInterfaceDeclaration classDeclaration : classList) {
             if (classDeclaration.getNameAsString().equals(className)) {
-                MethodDeclaration newMethod = classDeclaration.addMethod(methodName, Modifier.PUBLIC);
-                newMethod.addAnnotation(annotation);
-                return newMethod;
+                updatingIndex = true;
+                try {
+                    MethodDeclaration newMethod = classDeclaration.addMethod(methodName, Modifier.PUBLIC);
+                    newMethod.addAnnotation(annotation);
+                    indexMethod(newMethod, classDeclaration);
+                    return newMethod;
+                } finally {
+                    updatingIndex = false;
+                }
             }
         }
         return null;
@@ -504,35 +707,23 @@ public class JavaFile {
      * Writes the file to the output path, then tries to compile the output file.
      */
     private DiagnosticCollector<JavaFileObject> tryCompile() throws IOException {
-        writeAndReloadCompilationUnit();
+        writeFile();
+        loadClassList(simpleName, extensions);
         return runCompilation();
     }
 
     private DiagnosticCollector<JavaFileObject> runCompilation() throws IOException {
         final File file = Objects.requireNonNull(path()).toFile();
 
-        final JavaCompiler javaCompiler = ToolProvider.getSystemJavaCompiler();
-        final List<String> compilerOptions =
-                new ArrayList<>(Arrays.asList("-classpath", classPath));
-
-        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final DiagnosticCollector<JavaFileObject> diagnostics =
+                compileSources(Collections.singletonList(file), classPath, null);
 
-        try (final StandardJavaFileManager fileManager =
-                     javaCompiler.getStandardFileManager(diagnostics, null, null)) {
-            final Iterable<? extends JavaFileObject> fileObjects =
-                    fileManager.getJavaFileObjectsFromFiles(Collections.singletonList(file));
+        // Move to compile output path
+        final Path compiledPath = ParserPathManager.changeExtension(path(), "class");
+        final Path outputPath = ParserPathManager.compiledPath(path());
 
-            final JavaCompiler.CompilationTask compilationTask =
-                    javaCompiler.getTask(null, fileManager, diagnostics, compilerOptions, null, fileObjects);
-            compilationTask.call();
-
-            // Move to compile output path
-            final Path compiledPath = ParserPathManager.changeExtension(path(), "class");
-            final Path outputPath = ParserPathManager.compiledPath(path());
-
-            System.out.println("[INFO] Compiling to " + outputPath);
-            Files.move(compiledPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
-        }
+        System.out.println("[INFO] Compiling to " + outputPath);
+        Files.move(compiledPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
 
         return diagnostics;
     }
@@ -570,7 +761,7 @@ public class JavaFile {
     private final class MethodRemoverVisitor extends ModifierVisitor<Void> {
         private final MethodDeclaration method;
 
-        private boolean found = false;
+        private final List<MethodDeclaration> removed = new ArrayList<>();
 
         MethodRemoverVisitor(final MethodDeclaration method) {
             this.method = method;
@@ -579,7 +770,7 @@ public class JavaFile {
         @Override
         public Visitable visit(MethodDeclaration n, Void arg) {
             if (n.getSignature().equals(method.getSignature())) {
-                this.found = true;
+                removed.add(n);
 
                 return null;
             }
@@ -588,7 +779,11 @@ public class JavaFile {
         }
 
         boolean succeeded() {
-            return found;
+            return !removed.isEmpty();
+        }
+
+        List<MethodDeclaration> removed() {
+            return removed;
         }
     }
 }
@@ -19,18 +19,20 @@ import java.net.URLClassLoader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class JavaMethod {
     public static Optional<JavaMethod> find(final String methodName, final List<Path> files,
                                             final String classpath)
             throws IOException {
+        // Each file is loaded once, even when it is searched again for a superclass method
+        final Map<Path, JavaFile> loadedFiles = new HashMap<>();
         for (final Path file : files) {
             if (Files.exists(file) && FilenameUtils.isExtension(file.getFileName().toString(), "java")) {
-                String fileName = file.getFileName().toString();
-                String fileShortName = fileName.substring(0, fileName.lastIndexOf("."));
-                final JavaFile javaFile = JavaFile.loadFile(file, classpath, ParserPathManager.compiledPath(file).getParent(), fileShortName, "");
+                final JavaFile javaFile = load(file, classpath, loadedFiles);
 
                 final MethodDeclaration methodDeclaration = javaFile.findMethodDeclaration(methodName);
 
@@ -70,9 +72,7 @@ public class JavaMethod {
         for (String superMethodName : superMethodNames) {
             for (final Path file : files) {
                 if (Files.exists(file) && FilenameUtils.isExtension(file.getFileName().toString(), "java")) {
-                    String fileName = file.getFileName().toString();
-                    String fileShortName = fileName.substring(0, fileName.lastIndexOf("."));
-                    final JavaFile javaFile = JavaFile.loadFile(file, classpath, ParserPathManager.compiledPath(file).getParent(), fileShortName, "");
+                    final JavaFile javaFile = load(file, classpath, loadedFiles);
 
                     final MethodDeclaration methodDeclaration = javaFile.findMethodDeclaration(superMethodName);
 
@@ -86,6 +86,18 @@ public class JavaMethod {
         return Optional.empty();
     }
 
+    private static JavaFile load(final Path file, final String classpath, final Map<Path, JavaFile> loadedFiles)
+            throws IOException {
+        JavaFile javaFile = loadedFiles.get(file);
+        if (javaFile == null) {
+            String fileName = file.getFileName().toString();
+            String fileShortName = fileName.substring(0, fileName.lastIndexOf("."));
+            javaFile = JavaFile.loadFile(file, classpath, ParserPathManager.compiledPath(file).getParent(), fileShortName, "");
+            loadedFiles.put(file, javaFile);
+        }
+        return javaFile;
+    }
+
     private final String methodName;
     private final JavaFile javaFile;
     private final MethodDeclaration method;
@@ -2,6 +2,8 @@ package edu.utexas.ece.sa.tools.parser;
 
 import com.github.javaparser.ast.body.*;
 
+import com.google.gson.GsonBuilder;
+
 import edu.illinois.cs.testrunner.configuration.Configuration;
 import edu.illinois.cs.testrunner.data.framework.TestFramework;
 import edu.illinois.cs.testrunner.data.results.TestResult;
@@ -13,7 +15,6 @@ import edu.utexas.ece.sa.tools.mavenplugin.AbstractParserMojo;
 import edu.illinois.cs.testrunner.testobjects.TestLocator;
 import edu.utexas.ece.sa.tools.runner.InstrumentingSmartRunner;
 import edu.utexas.ece.sa.tools.utility.*;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -25,22 +26,29 @@ import scala.util.Try;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 @Mojo(name = "parse", defaultPhase = LifecyclePhase.TEST, requiresDependencyResolution = ResolutionScope.TEST)
 public class ParserMojo extends AbstractParserMojo {
     private static final Map<Integer, List<String>> locateTestList = new HashMap<>();
 
+    private LocatedTestsCache locatedTestsCache;
+
     private InstrumentingSmartRunner runner;
 
     private String testName;
@@ -49,22 +57,16 @@ public class ParserMojo extends AbstractParserMojo {
     private Set<String> testClasses;
 
     // Get all test source files
-    private List<Path> testFiles;
+    private TestSourceIndex testSourceIndex;
 
     // useful for modules with JUnit 4 tests but depend on something in JUnit 5
     private final boolean forceJUnit4 = Configuration.config().getProperty("dt.detector.forceJUnit4", false);
 
-    private Path file;
-
-    private String fileShortName;
-
-    private JavaFile javaFile;
-
-    private static int index = 0;
-
-    private String testClass;
-
-    private JavaFile backupJavaFile;
+    // Held for writing from the first source edit of a split step through its compilation, since compiling picks
+    // up every changed source, including those of other test classes being split at the same time; held for
+    // reading around each test run (see ShuffleOrdersUtils#setRunLock), so no class file changes under it. Fair, so a
+    // waiting edit is not starved
+    private final ReadWriteLock sourceLock = new ReentrantReadWriteLock(true);
 
     private MavenProject upperProject;
 
@@ -74,42 +76,43 @@ public class ParserMojo extends AbstractParserMojo {
 
     private List<String> tests;
 
-    private Map<String, List<String>> curTests;
+    private boolean runFromMvn;
 
-    private boolean restore;
+    // Resolved once per execution; the class loader is shared until the test classes are compiled again
+    private ProjectClasspath projectClasspath;
 
-    private boolean runFromMvn;
+    private synchronized ProjectClasspath projectClasspath() {
+        if (projectClasspath == null) {
+            projectClasspath = new ProjectClasspath(mavenProject);
+        }
+        return projectClasspath;
+    }
 
     private String classpath() throws DependencyResolutionRequiredException {
-        final List<String> elements = new ArrayList<>(mavenProject.getCompileClasspathElements());
-        elements.addAll(mavenProject.getRuntimeClasspathElements());
-        elements.addAll(mavenProject.getTestClasspathElements());
-
-        return String.join(File.pathSeparator, elements);
+        return projectClasspath().classpath();
     }
 
     private URLClassLoader projectClassLoader() throws DependencyResolutionRequiredException {
-        // Get the project classpath, it will be useful for many things
-        List<URL> urlList = new ArrayList();
-        for (String cp : classpath().split(":")) {
-            try {
-                urlList.add(new File(cp).toURL());
-            } catch (MalformedURLException mue) {
-                System.out.println("Classpath element " + cp + " is malformed!");
-            }
-        }
-        URL[] urls = urlList.toArray(new URL[urlList.size()]);
-        return URLClassLoader.newInstance(urls);
+        return projectClasspath().classLoader();
     }
 
     private List<String> locateTests(MavenProject project, TestFramework testFramework) {
         int id = Objects.hash(project, testFramework);
         if (!locateTestList.containsKey(id)) {
+            // Saved by an earlier run over the same compiled test classes
+            final Optional<List<String>> located = locatedTestsCache(project).load(testFramework.toString());
+            if (located.isPresent()) {
+                System.out.println("Loaded " + located.get().size() + " located tests from the cache");
+                locateTestList.put(id, located.get());
+                return located.get();
+            }
             System.out.println("Locating tests...");
             try {
 		            locateTestList.put(id, OperationTime.runOperation(() -> {
-                    return new ArrayList<String>(JavaConverters.bufferAsJavaList(
-                            TestLocator.tests(mavenProject, testFramework).toBuffer()));
+                    try (Timeline.Span span = Timeline.start("locate-tests", testFramework.toString())) {
+                        return new ArrayList<String>(JavaConverters.bufferAsJavaList(
+                                TestLocator.tests(mavenProject, testFramework).toBuffer()));
+                    }
                 }, (tests, time) -> {
                         System.out.println("Located " + tests.size() + " " +
                                 "tests. Time taken: " + time.elapsedSeconds() + " seconds");
@@ -118,10 +121,18 @@ public class ParserMojo extends AbstractParserMojo {
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
+            locatedTestsCache(project).store(testFramework.toString(), locateTestList.get(id));
         }
         return locateTestList.get(id);
     }
 
+    private LocatedTestsCache locatedTestsCache(final MavenProject project) {
+        if (locatedTestsCache == null) {
+            locatedTestsCache = new LocatedTestsCache(Paths.get(project.getBuild().getTestOutputDirectory()));
+        }
+        return locatedTestsCache;
+    }
+
     protected void loadTestRunners(final MavenProject mavenProject, String testname) throws IOException {
         // Currently there could two runners, one for JUnit 4 and one for JUnit 5
         // If the maven project has both JUnit 4 and JUnit 5 tests, two runners will
@@ -160,31 +171,10 @@ public class ParserMojo extends AbstractParserMojo {
                             "Module is not using a supported test framework (probably not JUnit), " +
                                     "or there is no test.";
                 } else {
-                    // more than one runner, figure out what type the desired
-                    // test is by reflecting, then use corresponding runner.
+                    // more than one runner, figure out what type the desired test is from its
+                    // class file (without loading it), then use corresponding runner.
                     try {
-                        String framework = "";
-                        Class testClass = projectClassLoader().loadClass(testname);
-                        Method[] declaredMethods = testClass.getDeclaredMethods();
-                        Method[] methods = testClass.getMethods();
-                        Method[] allMethods = Arrays.copyOf(declaredMethods,
-                                declaredMethods.length + methods.length);
-                        System.arraycopy(methods, 0, allMethods, declaredMethods.length, methods.length);
-                        // check annotations on all methods to determine which framework to use
-                        for (Method meth : allMethods) {
-                            for (Annotation a : meth.getDeclaredAnnotations()) {
-                                if (a.toString().startsWith("@org.junit.Test(")) {
-                                    framework = "JUnit";
-                                    break;
-                                } else if (a.toString().startsWith("@org.junit.jupiter.api.Test(")) {
-                                    framework = "JUnit5";
-                                    break;
-                                }
-                            }
-                            if (!framework.equals("")) {
-                                break;
-                            }
-                        }
+                        String framework = new TestFrameworkDetector(projectClassLoader()).framework(testname);
                         // identified the framework, so search through runners finding the corresponding one
                         for (Runner r : runners) {
                             if (r.framework().toString().equals(framework)) {
@@ -280,24 +270,55 @@ public class ParserMojo extends AbstractParserMojo {
     @Override
     public void execute() {
         superExecute();
-        searching();
+        try {
+            searching();
+        } finally {
+            // Stops the warm worker JVM, if parser.runner.daemon started one
+            if (this.runner != null) {
+                this.runner.close();
+            }
+            if (projectClasspath != null) {
+                projectClasspath.close();
+            }
+            try {
+                JavaFile.flushPendingWrites();
+            } catch (IOException e) {
+                System.out.println("Could not write the changed test sources: " + e);
+            }
+            System.out.println("PARSED SOURCE CACHE: " + CompilationUnitCache.cache().summary());
+            try {
+                Timeline.write(ParserPathManager.timelinePath());
+            } catch (IOException e) {
+                System.out.println("Could not write the timeline: " + e);
+            }
+        }
     }
 
     protected void searching() {
         try {
             testName = Configuration.config().getProperty("parser.testname", "");
+            // A comma-separated list of test classes and globs, or "all", split in one run (see splitTestClasses)
+            final String testNames = Configuration.config().getProperty("parser.testnames", "");
             String fromMvn = Configuration.config().getProperty("parser.fromMaven", "false");
             if (fromMvn.equals("false")) {
                 runFromMvn = false;
             } else if (fromMvn.equals("true")) {
                 runFromMvn = true;
             }
+            ShuffleOrdersUtils.loadSearchSeed();
+            ShuffleOrdersUtils.setRunLock(sourceLock.readLock());
             // the cachePath for Parser here is ".dtfixingtools".
             if (!Files.exists(ParserPathManager.cachePath())) {
                 Files.createDirectories(ParserPathManager.cachePath());
             }
             // load the test runners (codes fetched from iDFlakies)
-            loadTestRunners(mavenProject, testName);
+            try (Timeline.Span span = Timeline.start("load-runners")) {
+                loadTestRunners(mavenProject, testName.equals("") ? firstTestName(testNames) : testName);
+            }
+            if (this.runner == null) {
+                // loadTestRunners said why
+                return;
+            }
 
             //  get the full list of tests for this maven project
             tests = getTests(mavenProject, this.runner.framework());
@@ -307,10 +328,10 @@ public class ParserMojo extends AbstractParserMojo {
             }
             // obtain all the test classes
             testClasses = getTestClasses(tests);
-            // Get all test source files
-            testFiles = testSources();
+            // Index the test source files by class name
+            testSourceIndex = TestSourceIndex.module(mavenProject);
 
-            if (testName.equals("")) {
+            if (testName.equals("") && testNames.equals("")) {
                 System.out.println("Please provide test name!");
                 return;
             }
@@ -333,42 +354,19 @@ public class ParserMojo extends AbstractParserMojo {
                 moduleName = baseDir.toString().substring(upperDir.toString().length() + 1);
             }
 
-            restore = false;
+            if (!testNames.equals("")) {
+                splitTestClasses(selectTestClasses(testNames));
+                return;
+            }
 
-            boolean exist = false;
-            for (String testClass : testClasses) {
-                if (!testClass.equals(testName)) {
-                    continue;
-                }
-                for (final Path file : testFiles) {
-                    if (Files.exists(file) && FilenameUtils.isExtension(
-                            file.getFileName().toString(), "java")) {
-                        String fileName = file.getFileName().toString();
-                        this.file = file;
-                        this.testClass = testClass;
-                        fileShortName = fileName.substring(0, fileName.lastIndexOf("."));
-                        if (testClass.endsWith("." + fileShortName)) {
-                            javaFile = JavaFile.loadFile(file, classpath(),
-                                    ParserPathManager.compiledPath(file).getParent(), fileShortName, "");
-                            if (!testName.equals(javaFile.getPackageName() + "." + fileShortName)) {
-                                continue;
-                            }
-                            exist = true;
-                            parse();
-                            if (runFromMvn) {
-                                return;
-                            }
-                        }
-                    }
-                }
+            ClassSplit classSplit = new ClassSplit(testName, this.runner);
+            classSplit.run();
+            if (classSplit.runsFromMaven() || classSplit.aborted()) {
+                return;
             }
-            if (exist) {
-                System.out.println(testName + " SUCCESSFULLY SPLIT AND MAKE ALL TESTS PASS");
-                if (restore) {
-                    System.out.println(testName + " HAS TESTS RESTORED TO THE ORIGINAL FILE");
-                }
+            if (classSplit.curTests != null) {
+                ShuffleOrdersUtils.checkTestsOrder(classSplit.curTests, runner);
             }
-            ShuffleOrdersUtils.checkTestsOrder(curTests, runner);
         } catch (IOException | DependencyResolutionRequiredException exception) {
             exception.printStackTrace();
         } catch (Exception e) {
@@ -376,144 +374,274 @@ public class ParserMojo extends AbstractParserMojo {
         }
     }
 
-    protected void parse() {
-        try {
-            backup(javaFile);
-            Path path = ParserPathManager.backupPath(javaFile.path());
-            backupJavaFile = JavaFile.loadFile(path, classpath(),
-                    ParserPathManager.compiledPath(path).getParent(), fileShortName, "");
-            System.out.println("JAVA FILE NAME: " + javaFile.path());
-            Refactor refactor = new Refactor(mavenProject, classpath(), projectClassLoader(), this.runner);
-            refactor.updateJUnitTestFiles(javaFile);
-            if (runFromMvn) {
-                System.out.println("WILL RUN FROM MAVEN!!!");
-                return;
+    private static String firstTestName(final String testNames) {
+        for (String name : testNames.split(",")) {
+            name = name.trim();
+            if (!name.isEmpty() && !name.equals("all") && !name.contains("*") && !name.contains("?")) {
+                return name;
             }
-            System.out.println("MVN INSTALL FROM THE UPPER LEVEL!");
-            boolean result = MvnCommands.runMvnInstallFromUpper(upperProject, false,
-                    upperDir, moduleName);
-            System.out.println("MVN OUTPUT: " + result);
-            List<String> testsForNewClass = new LinkedList<>();
-            for (String testForNewClass : tests) {
-                String testClassForNewClass = testForNewClass.substring(0, testForNewClass.lastIndexOf(
-                        this.runner.framework().getDelimiter()));
-                if (testClassForNewClass.equals(testClass)) {
-                    testsForNewClass.add(testForNewClass);
+        }
+        return "";
+    }
+
+    /**
+     * The test classes named in parser.testnames: "all", or class names and globs, where "*" and "?" stay within one
+     * package segment and "**" spans several. Classes generated by an earlier split (*New&lt;d&gt;) are left out.
+     */
+    protected List<String> selectTestClasses(final String testNames) {
+        final List<String> sortedClasses = new ArrayList<>(new TreeSet<>(testClasses));
+        final Set<String> selected = new LinkedHashSet<>();
+        for (String name : testNames.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (name.equals("all")) {
+                selected.addAll(sortedClasses);
+            } else if (name.contains("*") || name.contains("?")) {
+                final Pattern glob = globPattern(name);
+                for (final String testClass : sortedClasses) {
+                    if (glob.matcher(testClass).matches()) {
+                        selected.add(testClass);
+                    }
                 }
+            } else {
+                selected.add(name);
             }
-            // loadTestRunners(mavenProject, testName);
-            Try<TestRunResult> testRunResultTry = this.runner.runList(testsForNewClass);
-            List<String> remainTests = new LinkedList<>(testsForNewClass);
-            Map<String, TestResult> map = testRunResultTry.get().results();
-            System.out.println(map);
-            Set<String> failedTests = new HashSet<>();
-            Utils.obtainLastTestResults(map, failedTests);
-//            if (failedTests.size() == 0) {
-//                curTests = new HashMap<>();
-//                curTests.put(testClass, testsForNewClass);
-//                return;
-//            }
-            List<String> bestOrder = ShuffleOrdersUtils.shuffleAllTests(testsForNewClass,
-                    failedTests, runner);
-            if (failedTests.size() == 0) {
-                curTests = new HashMap<>();
-                curTests.put(testClass, testsForNewClass);
-                return;
+        }
+        selected.removeIf(testClass -> {
+            final Matcher generated = Pattern.compile("(.*)New\\d+").matcher(testClass);
+            return generated.matches() && testClasses.contains(generated.group(1));
+        });
+        return new ArrayList<>(selected);
+    }
+
+    private static Pattern globPattern(final String glob) {
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^.]*");
+            } else if (c == '?') {
+                regex.append("[^.]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
             }
-            List<String> actualBestOrder = new ArrayList<>();
-            for (String str : bestOrder) {
-                if (!failedTests.contains(str)) {
-                    actualBestOrder.add(str);
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Splits every given test class, parser.parallelism at a time, each with a runner of its own, and writes one
+     * report for all of them (see {@link ParserPathManager#splitReportPath()}).
+     */
+    protected void splitTestClasses(final List<String> classNames)
+            throws IOException, InterruptedException, DependencyResolutionRequiredException {
+        final int parallelism = Math.max(1, Configuration.config().getProperty("parser.parallelism",
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+        // One runner serves every class, so its framework has to be theirs as well
+        final String runnerFramework = this.runner.framework().toString();
+        final TestFrameworkDetector detector = new TestFrameworkDetector(projectClassLoader());
+        final Map<String, String> otherFrameworks = new TreeMap<>();
+        for (final String className : classNames) {
+            final String framework = detector.framework(className);
+            if (!framework.equals(TestFrameworkDetector.UNKNOWN) && !framework.equals(runnerFramework)) {
+                otherFrameworks.put(className, framework);
+            }
+        }
+        if (!otherFrameworks.isEmpty()) {
+            System.out.println("parser.testnames mixes JUnit 4 and JUnit 5 test classes, which cannot be split in"
+                    + " one run. The runner is for " + runnerFramework + " but these classes are not: "
+                    + otherFrameworks + ". Split them in a separate run.");
+            return;
+        }
+        System.out.println("SPLITTING " + classNames.size() + " TEST CLASSES, " + parallelism + " AT A TIME");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        final Map<String, Future<Map<String, Object>>> futures = new LinkedHashMap<>();
+        for (final String className : classNames) {
+            futures.put(className, executor.submit(() -> {
+                final long startTime = System.currentTimeMillis();
+                final Map<String, Object> entry = new LinkedHashMap<>();
+                try (InstrumentingSmartRunner classRunner = this.runner.copy()) {
+                    ClassSplit classSplit = new ClassSplit(className, classRunner);
+                    classSplit.run();
+                    if (!classSplit.runsFromMaven() && !classSplit.aborted() && classSplit.curTests != null) {
+                        ShuffleOrdersUtils.checkTestsOrder(classSplit.curTests, classRunner);
+                    }
+                    entry.put("status", classSplit.status);
+                    entry.put("classes", classSplit.curTests);
                 }
+                entry.put("seconds", new OperationTime(startTime, System.currentTimeMillis()).elapsedSeconds());
+                return entry;
+            }));
+        }
+        executor.shutdown();
+
+        final Map<String, Object> report = new LinkedHashMap<>();
+        final Map<String, Integer> statusCounts = new TreeMap<>();
+        for (final Map.Entry<String, Future<Map<String, Object>>> future : futures.entrySet()) {
+            Map<String, Object> entry;
+            try {
+                entry = future.getValue().get();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                entry = new LinkedHashMap<>();
+                entry.put("status", ClassSplit.ERROR);
+                entry.put("error", String.valueOf(e.getCause()));
             }
-            if (actualBestOrder.size() > 0) {
-                map = this.runner.runList(actualBestOrder).get().results();
-                Utils.obtainLastTestResults(map, failedTests);
+            report.put(future.getKey(), entry);
+            statusCounts.merge(String.valueOf(entry.get("status")), 1, Integer::sum);
+            System.out.println("SPLIT RESULT: " + future.getKey() + " " + entry.get("status"));
+        }
+        System.out.println("SPLIT " + classNames.size() + " TEST CLASSES: " + statusCounts);
+
+        Files.write(ParserPathManager.splitReportPath(), new GsonBuilder().setPrettyPrinting().serializeNulls()
+                .create().toJson(report).getBytes(StandardCharsets.UTF_8));
+        System.out.println("SPLIT REPORT WRITTEN TO " + ParserPathManager.splitReportPath());
+    }
+
+    /**
+     * Splitting one test class: the working copies of its source file and the runner its tests run on.
+     */
+    protected class ClassSplit {
+        static final String NOT_FOUND = "NOT_FOUND";
+        static final String SPLIT = "SPLIT";
+        static final String RESTORED = "SPLIT_WITH_RESTORE";
+        static final String FROM_MAVEN = "FROM_MAVEN";
+        static final String ALL_TESTS_FAIL = "ALL_TESTS_FAIL";
+        static final String INFINITE_LOOP = "INFINITE_LOOP";
+        static final String ERROR = "ERROR";
+
+        private final String testName;
+
+        private final InstrumentingSmartRunner runner;
+
+        private Path file;
+
+        private String fileShortName;
+
+        private JavaFile javaFile;
+
+        private int index = 0;
+
+        private String testClass;
+
+        private JavaFile backupJavaFile;
+
+        private Map<String, List<String>> curTests;
+
+        private boolean restore;
+
+        // The polluters or setters of each failed test, by method name, to group the tests of the new classes
+        private Map<String, PolluterMinimizer.Dependencies> dependencies = new HashMap<>();
+
+        private String status = NOT_FOUND;
+
+        ClassSplit(final String testName, final InstrumentingSmartRunner runner) {
+            this.testName = testName;
+            this.runner = runner;
+        }
+
+        boolean runsFromMaven() {
+            return status.equals(FROM_MAVEN);
+        }
+
+        // The class cannot be split; it used to end the whole run
+        boolean aborted() {
+            return status.equals(ALL_TESTS_FAIL) || status.equals(INFINITE_LOOP) || status.equals(ERROR);
+        }
+
+        void run() throws IOException, DependencyResolutionRequiredException {
+            restore = false;
+
+            boolean exist = false;
+            if (testClasses.contains(testName)) {
+                // Only files named after the class can declare it; the package declaration decides which one does
+                final String simpleName = testName.substring(testName.lastIndexOf('.') + 1);
+                for (final Path file : testSourceIndex.sourcesNamed(simpleName)) {
+                    this.file = file;
+                    this.testClass = testName;
+                    fileShortName = simpleName;
+                    javaFile = JavaFile.loadFile(file, classpath(),
+                            ParserPathManager.compiledPath(file).getParent(), fileShortName, "");
+                    if (!testName.equals(javaFile.getPackageName() + "." + fileShortName)) {
+                        continue;
+                    }
+                    exist = true;
+                    status = SPLIT;
+                    parse();
+                    if (runsFromMaven() || aborted()) {
+                        return;
+                    }
+                }
             }
-            for (String failedTest : failedTests) {
-                String formalFailedTest = failedTest;
-                if (failedTest.contains("#") || failedTest.contains("()")) {
-                    formalFailedTest = formalFailedTest.replace("#", ".");
-                    formalFailedTest = formalFailedTest.replace("()", "");
+            if (exist) {
+                System.out.println(testName + " SUCCESSFULLY SPLIT AND MAKE ALL TESTS PASS");
+                if (restore) {
+                    status = RESTORED;
+                    System.out.println(testName + " HAS TESTS RESTORED TO THE ORIGINAL FILE");
                 }
-                MethodDeclaration md = javaFile.findTestMethodDeclaration(formalFailedTest);
-                javaFile.removeMethod(md);
-                remainTests.remove(failedTest);
-            }
-            // read the test class file one by one
-            curTests = new HashMap<>();
-            curTests.put(testClass, remainTests);
-            javaFile.writeAndReloadCompilationUnit();
-            index = 0;
-            int numOfFailedTests = failedTests.size();
-            if (numOfFailedTests == testsForNewClass.size()) {
-                System.out.println("ALL TESTS FAIL AT THE BEGINNING!!!");
-                System.exit(0);
-            }
-            split(failedTests);
-        } catch (IOException | DependencyResolutionRequiredException | ClassNotFoundException | MavenInvocationException | InterruptedException ioException) {
-            ioException.printStackTrace();
+            } else {
+                System.out.println("CANNOT FIND THE SOURCE OF " + testName);
+            }
         }
-    }
 
-    protected void split(Set<String> failedTests) {
-        try {
-            int numOfFailedTests = failedTests.size();
-            while (!failedTests.isEmpty()) {
-                System.out.println("FILEPATH: " + file);
-                // file refers to the current file path, replace the current path *.java to *New<d>.java.
-                // d here refers to the digit
-                Path path1 = ParserPathManager.backupPath1(file, "New" + index + ".java");
-                Utils.backup1(javaFile, "New" + index + ".java");
-                JavaFile javaFile1 = JavaFile.loadFile(path1, classpath(),
-                        ParserPathManager.compiledPath(path1).getParent(), fileShortName,
-                        "New" + index);
-                for (MethodDeclaration md : javaFile1.findMethodsWithAnnotation("Test")) {
-                    javaFile1.removeMethod(md);
+        protected void parse() {
+            try {
+                sourceLock.writeLock().lock();
+                try {
+                    backup(javaFile);
+                    Path path = ParserPathManager.backupPath(javaFile.path());
+                    backupJavaFile = JavaFile.loadFile(path, classpath(),
+                            ParserPathManager.compiledPath(path).getParent(), fileShortName, "");
+                    System.out.println("JAVA FILE NAME: " + javaFile.path());
+                    Refactor refactor = new Refactor(mavenProject, classpath(), projectClassLoader(), this.runner);
+                    try (Timeline.Span span = Timeline.start("refactor", javaFile.path().getFileName().toString())) {
+                        refactor.updateJUnitTestFiles(javaFile);
+                    }
+                    if (runFromMvn) {
+                        System.out.println("WILL RUN FROM MAVEN!!!");
+                        status = FROM_MAVEN;
+                        return;
+                    }
+                    boolean result = compileTestSources(false);
+                    System.out.println("MVN OUTPUT: " + result);
+                } finally {
+                    sourceLock.writeLock().unlock();
                 }
-                javaFile1.writeAndReloadCompilationUnit();
-                List<String> failedTestsList = new LinkedList<>();
-                System.out.println("---------------FAILED TESTS TO BE SPLIT---------------");
-                for (String failedTest : failedTests) {
-                    String longFailedTestClassName = testClass + "New" + index;
-                    String shortFailedTestName = failedTest.substring(
-                            failedTest.lastIndexOf(this.runner.framework().getDelimiter()) + 1);
-                    String formalShortFailedTestName = shortFailedTestName;
-                    if (formalShortFailedTestName.contains("()")) {
-                        formalShortFailedTestName =
-                                formalShortFailedTestName.replace("()", "");
+                List<String> testsForNewClass = new LinkedList<>();
+                for (String testForNewClass : tests) {
+                    String testClassForNewClass = testForNewClass.substring(0, testForNewClass.lastIndexOf(
+                            this.runner.framework().getDelimiter()));
+                    if (testClassForNewClass.equals(testClass)) {
+                        testsForNewClass.add(testForNewClass);
                     }
-                    MethodDeclaration newMD = javaFile1.addMethod(
-                            longFailedTestClassName + "." + formalShortFailedTestName);
-                    failedTestsList.add(longFailedTestClassName +
-                            this.runner.framework().getDelimiter() + shortFailedTestName);
-                    System.out.println("failed test: " + longFailedTestClassName +
-                            this.runner.framework().getDelimiter() + shortFailedTestName);
-                    MethodDeclaration md = backupJavaFile.findTestMethodDeclaration(
-                            testClass + "." + formalShortFailedTestName);
-                    newMD.setThrownExceptions(md.getThrownExceptions());
-                    newMD.setBody(md.getBody().get());
-                    newMD.setAnnotations(md.getAnnotations());
-                    javaFile1.writeAndReloadCompilationUnit();
                 }
-                List<String> curFailedTests = new ArrayList<>(failedTestsList);
-                // reload the java file before splitting again
-                JavaFile javaFile1Before =
-                        JavaFile.loadFile(path1, classpath(),
-                                ParserPathManager.compiledPath(path1).getParent(),
-                                fileShortName, "New" + index);
-                Refactor refactor = new Refactor(mavenProject, classpath(), projectClassLoader(), this.runner);
-                refactor.updateJUnitTestFiles(javaFile1);
-                System.out.println("MVN INSTALL FROM THE UPPER LEVEL!");
-                boolean result = MvnCommands.runMvnInstallFromUpper(upperProject, true, upperDir,
-                        moduleName);
-                System.out.println("MVN OUTPUT: " + result);
-                Map<String, TestResult> firstResMap = this.runner.runList(failedTestsList).get().results();
-                failedTests = new HashSet<>();
-                Utils.obtainLastTestResults(firstResMap, failedTests);
+                List<String> remainTests = new LinkedList<>(testsForNewClass);
+                Set<String> failedTests = new HashSet<>();
                 // loadTestRunners(mavenProject, testName);
-                List<String> bestOrder = ShuffleOrdersUtils.shuffleAllTests(failedTestsList,
+                Try<TestRunResult> testRunResultTry = ShuffleOrdersUtils.runList(testsForNewClass, this.runner);
+                Map<String, TestResult> map = testRunResultTry.get().results();
+                System.out.println(map);
+                Utils.obtainLastTestResults(map, failedTests);
+                Map<String, List<String>> failingOrders = new LinkedHashMap<>();
+                recordFailingOrder(failingOrders, failedTests, testsForNewClass);
+//                    if (failedTests.size() == 0) {
+//                        curTests = new HashMap<>();
+//                        curTests.put(testClass, testsForNewClass);
+//                        return;
+//                    }
+                List<String> bestOrder = ShuffleOrdersUtils.shuffleAllTests(testsForNewClass,
                         failedTests, runner);
+                if (failedTests.size() == 0) {
+                    curTests = new HashMap<>();
+                    curTests.put(testClass, testsForNewClass);
+                    return;
+                }
                 List<String> actualBestOrder = new ArrayList<>();
                 for (String str : bestOrder) {
                     if (!failedTests.contains(str)) {
@@ -521,64 +649,422 @@ public class ParserMojo extends AbstractParserMojo {
                     }
                 }
                 if (actualBestOrder.size() > 0) {
-                    Map<String, TestResult> secondResMap = this.runner.runList(actualBestOrder).get().results();
-                    System.out.println("NEW RUNNING RESULTS FOR THE FAILED TESTS: " + secondResMap);
-                    Utils.obtainLastTestResults(secondResMap, failedTests);
+                    map = ShuffleOrdersUtils.runList(actualBestOrder, this.runner).get().results();
+                    Utils.obtainLastTestResults(map, failedTests);
+                    recordFailingOrder(failingOrders, failedTests, actualBestOrder);
                 }
-                int curNumOfFailedTests = failedTests.size();
-                if (numOfFailedTests == curNumOfFailedTests) {
-                    System.out.println("TESTS ALWAYS FAIL! RESTORE THE ORIGINAL FILE!");
-                    javaFile1Before.writeAndReloadCompilationUnit();
-                    javaFile1 = javaFile1Before;
-                    javaFile1.writeAndReloadCompilationUnit();
-                    System.out.println("MVN INSTALL FROM THE UPPER LEVEL!");
-                    result = MvnCommands.runMvnInstallFromUpper(upperProject,
-                            true, upperDir, moduleName);
-                    System.out.println("MVN OUTPUT: " + result);
-                    restore = true;
-                    firstResMap = this.runner.runList(bestOrder).get().results();
+                if (failedTests.size() < testsForNewClass.size()) {
+                    minimizeDependencies(failingOrders, testsForNewClass);
+                }
+                sourceLock.writeLock().lock();
+                try {
+                    for (String failedTest : failedTests) {
+                        String formalFailedTest = failedTest;
+                        if (failedTest.contains("#") || failedTest.contains("()")) {
+                            formalFailedTest = formalFailedTest.replace("#", ".");
+                            formalFailedTest = formalFailedTest.replace("()", "");
+                        }
+                        MethodDeclaration md = javaFile.findTestMethodDeclaration(formalFailedTest);
+                        javaFile.removeMethod(md);
+                        remainTests.remove(failedTest);
+                    }
+                    // read the test class file one by one
+                    curTests = new HashMap<>();
+                    curTests.put(testClass, remainTests);
+                    javaFile.writeAndReloadCompilationUnit();
+                } finally {
+                    sourceLock.writeLock().unlock();
+                }
+                index = 0;
+                int numOfFailedTests = failedTests.size();
+                if (numOfFailedTests == testsForNewClass.size()) {
+                    System.out.println("ALL TESTS FAIL AT THE BEGINNING!!!");
+                    status = ALL_TESTS_FAIL;
+                    return;
+                }
+                split(failedTests);
+            } catch (IOException | DependencyResolutionRequiredException | ClassNotFoundException | MavenInvocationException | InterruptedException ioException) {
+                ioException.printStackTrace();
+                status = ERROR;
+            }
+        }
+
+        // Keeps, for each failed test not seen failing before, the order it failed in
+        private void recordFailingOrder(Map<String, List<String>> failingOrders, Set<String> failedTests,
+                                        List<String> order) {
+            for (String failedTest : failedTests) {
+                failingOrders.putIfAbsent(failedTest, order);
+            }
+        }
+
+        /**
+         * Finds the polluters or setters of each failed test (parser.split.minimize), starting from the order it
+         * failed in, so the split can tell up front which failed tests must not share a new class.
+         */
+        private void minimizeDependencies(Map<String, List<String>> failingOrders, List<String> tests) {
+            if (!Configuration.config().getProperty("parser.split.minimize", true)) {
+                return;
+            }
+            PolluterMinimizer minimizer = new PolluterMinimizer(
+                    testOrder -> ShuffleOrdersUtils.failedTestsInOrder(testOrder, this.runner));
+            try (Timeline.Span span = Timeline.start("minimize", testClass)) {
+                for (Map.Entry<String, List<String>> failingOrder : failingOrders.entrySet()) {
+                    String failedTest = failingOrder.getKey();
+                    PolluterMinimizer.Dependencies testDependencies = minimizer.minimize(failedTest,
+                            failingOrder.getValue(), tests);
+                    List<String> methodNames = new ArrayList<>();
+                    for (String test : testDependencies.tests) {
+                        methodNames.add(methodName(test));
+                    }
+                    dependencies.put(methodName(failedTest), new PolluterMinimizer.Dependencies(
+                            testDependencies.kind, methodNames));
+                    System.out.println("DEPENDENCIES OF " + failedTest + ": " + testDependencies);
+                }
+            }
+            System.out.println("MINIMIZED DEPENDENCIES OF " + failingOrders.size() + " FAILED TESTS IN "
+                    + minimizer.runs() + " RUNS");
+        }
+
+        // The failed tests that go to the next new class together (see PolluterMinimizer#nextGroup)
+        private List<String> groupForNewClass(Set<String> failedTests) {
+            Map<String, String> byMethodName = new LinkedHashMap<>();
+            for (String failedTest : failedTests) {
+                byMethodName.put(methodName(failedTest), failedTest);
+            }
+            List<String> group = new ArrayList<>();
+            for (String methodName : PolluterMinimizer.nextGroup(new ArrayList<>(byMethodName.keySet()), dependencies)) {
+                group.add(byMethodName.get(methodName));
+            }
+            return group;
+        }
+
+        private String methodName(String test) {
+            return test.substring(test.lastIndexOf(this.runner.framework().getDelimiter()) + 1);
+        }
+
+        /**
+         * Writes testClass + "New" + newIndex with the given tests, copied from the original class, and refactors
+         * it; the caller holds the source lock for writing and compiles it.
+         */
+        private NewClass writeNewClass(int newIndex, Collection<String> testsToMove)
+                throws IOException, DependencyResolutionRequiredException, ClassNotFoundException {
+            List<String> failedTestsList = new LinkedList<>();
+            // file refers to the current file path, replace the current path *.java to *New<d>.java.
+            // d here refers to the digit
+            Path path1 = ParserPathManager.backupPath1(file, "New" + newIndex + ".java");
+            Utils.backup1(javaFile, "New" + newIndex + ".java");
+            JavaFile javaFile1 = JavaFile.loadFile(path1, classpath(),
+                    ParserPathManager.compiledPath(path1).getParent(), fileShortName,
+                    "New" + newIndex);
+            for (MethodDeclaration md : javaFile1.findMethodsWithAnnotation("Test")) {
+                javaFile1.removeMethod(md);
+            }
+            javaFile1.writeAndReloadCompilationUnit();
+            System.out.println("---------------FAILED TESTS TO BE SPLIT---------------");
+            for (String failedTest : testsToMove) {
+                String longFailedTestClassName = testClass + "New" + newIndex;
+                String shortFailedTestName = failedTest.substring(
+                        failedTest.lastIndexOf(this.runner.framework().getDelimiter()) + 1);
+                String formalShortFailedTestName = shortFailedTestName;
+                if (formalShortFailedTestName.contains("()")) {
+                    formalShortFailedTestName =
+                            formalShortFailedTestName.replace("()", "");
+                }
+                MethodDeclaration newMD = javaFile1.addMethod(
+                        longFailedTestClassName + "." + formalShortFailedTestName);
+                failedTestsList.add(longFailedTestClassName +
+                        this.runner.framework().getDelimiter() + shortFailedTestName);
+                System.out.println("failed test: " + longFailedTestClassName +
+                        this.runner.framework().getDelimiter() + shortFailedTestName);
+                MethodDeclaration md = backupJavaFile.findTestMethodDeclaration(
+                        testClass + "." + formalShortFailedTestName);
+                newMD.setThrownExceptions(md.getThrownExceptions());
+                newMD.setBody(md.getBody().get());
+                newMD.setAnnotations(md.getAnnotations());
+                javaFile1.writeAndReloadCompilationUnit();
+            }
+            // reload the java file before splitting again
+            JavaFile javaFile1Before =
+                    JavaFile.loadFile(path1, classpath(),
+                            ParserPathManager.compiledPath(path1).getParent(),
+                            fileShortName, "New" + newIndex);
+            // Loading flushed the new class to disk, so this is its source before the refactoring
+            String sourceBefore = new String(Files.readAllBytes(path1), StandardCharsets.UTF_8);
+            Refactor refactor = new Refactor(mavenProject, classpath(), projectClassLoader(), this.runner);
+            try (Timeline.Span span = Timeline.start("refactor", javaFile1.path().getFileName().toString())) {
+                refactor.updateJUnitTestFiles(javaFile1);
+            }
+            return new NewClass(path1, javaFile1, javaFile1Before, sourceBefore, failedTestsList);
+        }
+
+        /**
+         * Splits the failed tests into as few new classes as the conflicts among them allow: a test conflicts with
+         * its polluters, and with any test it failed right after in a cached order. All the classes are written
+         * and compiled at once and their tests run in one pass, each class on its own.
+         * @return The tests that still fail, left for the class-by-class split.
+         */
+        private Set<String> splitAtOnce(Set<String> failedTests)
+                throws IOException, DependencyResolutionRequiredException, ClassNotFoundException,
+                MavenInvocationException {
+            ConflictGraph graph = new ConflictGraph();
+            for (String victim : failedTests) {
+                graph.addTest(victim);
+                PolluterMinimizer.Dependencies victimDependencies = dependencies.get(methodName(victim));
+                for (String polluter : failedTests) {
+                    if (polluter.equals(victim)) {
+                        continue;
+                    }
+                    Set<String> pairFailedTests = ShuffleOrdersUtils.cachedFailedTests(Arrays.asList(polluter, victim));
+                    if ((victimDependencies != null && victimDependencies.kind == PolluterMinimizer.Kind.POLLUTED
+                            && victimDependencies.tests.contains(methodName(polluter)))
+                            || (pairFailedTests != null && pairFailedTests.contains(victim))) {
+                        graph.addConflict(polluter, victim);
+                    }
+                }
+            }
+            List<List<String>> groups = graph.color();
+            System.out.println("SPLITTING " + failedTests.size() + " FAILED TESTS INTO " + groups.size()
+                    + " CLASSES AT ONCE: " + groups);
+
+            List<NewClass> newClasses = new ArrayList<>();
+            sourceLock.writeLock().lock();
+            try {
+                for (int i = 0; i < groups.size(); i++) {
+                    newClasses.add(writeNewClass(index + i, groups.get(i)));
+                }
+                boolean result = compileTestSources(true);
+                System.out.println("MVN OUTPUT: " + result);
+            } finally {
+                sourceLock.writeLock().unlock();
+            }
+            List<List<String>> orders = new ArrayList<>();
+            for (NewClass newClass : newClasses) {
+                orders.add(newClass.tests);
+            }
+            List<Set<String>> classesFailedTests = new ArrayList<>();
+            ShuffleOrdersUtils.runTestsInOrders(orders, this.runner);
+            for (NewClass newClass : newClasses) {
+                classesFailedTests.add(ShuffleOrdersUtils.failedTestsInOrder(newClass.tests, this.runner));
+            }
+
+            Set<String> stillFailing = new HashSet<>();
+            sourceLock.writeLock().lock();
+            try {
+                for (int i = 0; i < newClasses.size(); i++) {
+                    NewClass newClass = newClasses.get(i);
+                    List<String> passingTests = new ArrayList<>(newClass.tests);
+                    for (String failedTest : classesFailedTests.get(i)) {
+                        String formalFailedTest = failedTest.replace("#", ".").replace("()", "");
+                        newClass.javaFile.removeMethod(newClass.javaFile.findTestMethodDeclaration(formalFailedTest));
+                        passingTests.remove(failedTest);
+                        stillFailing.add(failedTest);
+                    }
+                    if (passingTests.isEmpty()) {
+                        // A class without tests fails to run, so it is not kept
+                        JavaFile.discardPendingWrite(newClass.path);
+                        Files.deleteIfExists(newClass.path);
+                        for (Path classFile : ParserPathManager.withNestedClassFiles(
+                                ParserPathManager.compiledPath(newClass.path))) {
+                            Files.deleteIfExists(classFile);
+                        }
+                    } else {
+                        curTests.put(testClass + "New" + (index + i), passingTests);
+                        newClass.javaFile.writeAndReloadCompilationUnit();
+                    }
+                }
+            } finally {
+                sourceLock.writeLock().unlock();
+            }
+            index += newClasses.size();
+            System.out.println("SPLIT AT ONCE LEFT " + stillFailing.size() + " FAILED TESTS: " + stillFailing);
+            return stillFailing;
+        }
+
+        protected void split(Set<String> failedTests) {
+            try {
+                if (!dependencies.isEmpty() && Configuration.config().getProperty("parser.split.oneshot", true)) {
+                    failedTests = splitAtOnce(failedTests);
+                }
+                int numOfFailedTests = failedTests.size();
+                while (!failedTests.isEmpty()) {
+                    System.out.println("FILEPATH: " + file);
+                    List<String> groupTests = groupForNewClass(failedTests);
+                    Set<String> deferredTests = new HashSet<>(failedTests);
+                    deferredTests.removeAll(groupTests);
+                    if (!deferredTests.isEmpty()) {
+                        System.out.println("DEFERRED TO A LATER CLASS, THEIR POLLUTERS GO TO THIS ONE: " + deferredTests);
+                    }
+                    List<String> failedTestsList;
+                    List<String> curFailedTests;
+                    JavaFile javaFile1;
+                    JavaFile javaFile1Before;
+                    NewClass newClass;
+                    sourceLock.writeLock().lock();
+                    try {
+                        newClass = writeNewClass(index, groupTests);
+                        failedTestsList = newClass.tests;
+                        javaFile1 = newClass.javaFile;
+                        javaFile1Before = newClass.javaFileBefore;
+                        curFailedTests = new ArrayList<>(failedTestsList);
+                        boolean result = compileTestSources(true);
+                        System.out.println("MVN OUTPUT: " + result);
+                    } finally {
+                        sourceLock.writeLock().unlock();
+                    }
+                    List<String> bestOrder;
+                    int curNumOfFailedTests;
+                    Map<String, List<String>> failingOrders = new LinkedHashMap<>();
+                    Map<String, TestResult> firstResMap = ShuffleOrdersUtils.runList(failedTestsList, this.runner)
+                            .get().results();
                     failedTests = new HashSet<>();
                     Utils.obtainLastTestResults(firstResMap, failedTests);
+                    recordFailingOrder(failingOrders, failedTests, failedTestsList);
                     // loadTestRunners(mavenProject, testName);
                     bestOrder = ShuffleOrdersUtils.shuffleAllTests(failedTestsList,
                             failedTests, runner);
-                    actualBestOrder = new ArrayList<>();
+                    List<String> actualBestOrder = new ArrayList<>();
                     for (String str : bestOrder) {
                         if (!failedTests.contains(str)) {
                             actualBestOrder.add(str);
                         }
                     }
                     if (actualBestOrder.size() > 0) {
-                        Map<String, TestResult> secondResMap = this.runner.runList(actualBestOrder).get().results();
+                        Map<String, TestResult> secondResMap = ShuffleOrdersUtils.runList(actualBestOrder, this.runner)
+                                .get().results();
                         System.out.println("NEW RUNNING RESULTS FOR THE FAILED TESTS: " + secondResMap);
                         Utils.obtainLastTestResults(secondResMap, failedTests);
+                        recordFailingOrder(failingOrders, failedTests, actualBestOrder);
                     }
-                    curNumOfFailedTests = failedTests.size();
-                    if (curNumOfFailedTests == numOfFailedTests) {
-                        System.out.println("ENCOUNTER INFINITE LOOP!!!");
-                        System.exit(0);
+                    curNumOfFailedTests = failedTests.size() + deferredTests.size();
+                    if (numOfFailedTests == curNumOfFailedTests) {
+                        System.out.println("TESTS ALWAYS FAIL! RESTORE THE ORIGINAL FILE!");
+                        sourceLock.writeLock().lock();
+                        try {
+                            // Forced, since the refactored source may still be pending and the AST did not change
+                            javaFile1Before.writeAndReloadCompilationUnit(true);
+                            javaFile1 = javaFile1Before;
+                            JavaFile.flushPendingWrite(newClass.path);
+                            if (!new String(Files.readAllBytes(newClass.path), StandardCharsets.UTF_8)
+                                    .equals(newClass.sourceBefore)) {
+                                throw new IOException("Restoring " + newClass.path
+                                        + " did not bring back its source before the refactoring");
+                            }
+                            boolean result = compileTestSources(true);
+                            System.out.println("MVN OUTPUT: " + result);
+                        } finally {
+                            sourceLock.writeLock().unlock();
+                        }
+                        restore = true;
+                        Map<String, TestResult> restoredResMap = ShuffleOrdersUtils.runList(bestOrder, this.runner)
+                                .get().results();
+                        failedTests = new HashSet<>();
+                        Utils.obtainLastTestResults(restoredResMap, failedTests);
+                        failingOrders = new LinkedHashMap<>();
+                        recordFailingOrder(failingOrders, failedTests, bestOrder);
+                        // loadTestRunners(mavenProject, testName);
+                        bestOrder = ShuffleOrdersUtils.shuffleAllTests(failedTestsList,
+                                failedTests, runner);
+                        List<String> restoredBestOrder = new ArrayList<>();
+                        for (String str : bestOrder) {
+                            if (!failedTests.contains(str)) {
+                                restoredBestOrder.add(str);
+                            }
+                        }
+                        if (restoredBestOrder.size() > 0) {
+                            Map<String, TestResult> secondResMap = ShuffleOrdersUtils.runList(restoredBestOrder, this.runner)
+                                    .get().results();
+                            System.out.println("NEW RUNNING RESULTS FOR THE FAILED TESTS: " + secondResMap);
+                            Utils.obtainLastTestResults(secondResMap, failedTests);
+                            recordFailingOrder(failingOrders, failedTests, restoredBestOrder);
+                        }
+                        curNumOfFailedTests = failedTests.size() + deferredTests.size();
+                        if (curNumOfFailedTests == numOfFailedTests) {
+                            System.out.println("ENCOUNTER INFINITE LOOP!!!");
+                            status = INFINITE_LOOP;
+                            return;
+                        }
                     }
-                }
-                numOfFailedTests = curNumOfFailedTests;
-                for (String failedTest : failedTests) {
-                    String formalFailedTests = failedTest;
-                    if (failedTest.contains("#") || failedTest.contains("()")) {
-                        formalFailedTests = formalFailedTests.replace("#", ".");
-                        formalFailedTests = formalFailedTests.replace("()", "");
+                    numOfFailedTests = curNumOfFailedTests;
+                    // Tests that fail again in the new class, and whose polluters or setters are not known yet
+                    failingOrders.keySet().removeIf(failedTest -> {
+                        PolluterMinimizer.Dependencies known = dependencies.get(methodName(failedTest));
+                        return known != null && known.kind != PolluterMinimizer.Kind.UNKNOWN;
+                    });
+                    if (!failingOrders.isEmpty() && failedTests.size() < failedTestsList.size()) {
+                        minimizeDependencies(failingOrders, failedTestsList);
                     }
-                    MethodDeclaration md = javaFile1.findTestMethodDeclaration(formalFailedTests);
-                    javaFile1.removeMethod(md);
-                    curFailedTests.remove(failedTest);
+                    sourceLock.writeLock().lock();
+                    try {
+                        for (String failedTest : failedTests) {
+                            String formalFailedTests = failedTest;
+                            if (failedTest.contains("#") || failedTest.contains("()")) {
+                                formalFailedTests = formalFailedTests.replace("#", ".");
+                                formalFailedTests = formalFailedTests.replace("()", "");
+                            }
+                            MethodDeclaration md = javaFile1.findTestMethodDeclaration(formalFailedTests);
+                            javaFile1.removeMethod(md);
+                            curFailedTests.remove(failedTest);
+                        }
+                        curTests.put(testClass + "New" + index, curFailedTests);
+                        javaFile1.writeAndReloadCompilationUnit();
+                    } finally {
+                        sourceLock.writeLock().unlock();
+                    }
+                    failedTests.addAll(deferredTests);
+                    index++;
                 }
-                curTests.put(testClass + "New" + index, curFailedTests);
-                javaFile1.writeAndReloadCompilationUnit();
-                index++;
+            } catch (IOException | MavenInvocationException | DependencyResolutionRequiredException | ClassNotFoundException | InterruptedException exception) {
+                exception.printStackTrace();
+                status = ERROR;
             }
-        } catch (IOException | MavenInvocationException | DependencyResolutionRequiredException | ClassNotFoundException | InterruptedException exception) {
-            exception.printStackTrace();
         }
     }
 
+    // A class generated by the split, with the tests moved into it
+    private static class NewClass {
+        private final Path path;
+        private final JavaFile javaFile;
+        private final JavaFile javaFileBefore;
+        private final String sourceBefore;
+        private final List<String> tests;
+
+        private NewClass(final Path path, final JavaFile javaFile, final JavaFile javaFileBefore,
+                         final String sourceBefore, final List<String> tests) {
+            this.path = path;
+            this.javaFile = javaFile;
+            this.javaFileBefore = javaFileBefore;
+            this.sourceBefore = sourceBefore;
+            this.tests = tests;
+        }
+    }
+
+    // Compiles only the rewritten test sources in process (parser.compile.incremental), falling back to mvn install
+    private boolean compileTestSources(boolean suppressOutput)
+            throws IOException, MavenInvocationException, DependencyResolutionRequiredException {
+        // Commit point: every deferred source edit has to be on disk before anything is compiled
+        JavaFile.flushPendingWrites();
+        if (Configuration.config().getProperty("parser.compile.incremental", true)) {
+            boolean compiled;
+            try (Timeline.Span span = Timeline.start("compile")) {
+                compiled = JavaFile.compileModifiedSources(classpath(),
+                        Paths.get(mavenProject.getBuild().getTestSourceDirectory()),
+                        Paths.get(mavenProject.getBuild().getTestOutputDirectory()));
+            }
+            if (compiled) {
+                System.out.println("COMPILED CHANGED TEST SOURCES IN PROCESS!");
+                projectClasspath().testOutputChanged();
+                ShuffleOrdersUtils.classesChanged();
+                return true;
+            }
+        }
+        System.out.println("MVN INSTALL FROM THE UPPER LEVEL!");
+        boolean result = MvnCommands.runMvnInstallFromUpper(upperProject, suppressOutput, upperDir, moduleName);
+        JavaFile.clearModifiedSources();
+        projectClasspath().testOutputChanged();
+        ShuffleOrdersUtils.classesChanged();
+        return result;
+    }
+
     protected Set<String> getTestClasses(List<String> tests) {
         Set<String> testClasses = new HashSet<>();
         String delimiter = this.runner.framework().getDelimiter();
@@ -591,15 +1077,6 @@ public class ParserMojo extends AbstractParserMojo {
         return testClasses;
     }
 
-    private List<Path> testSources() throws IOException {
-        final List<Path> testFiles = new ArrayList<>();
-        try (final Stream<Path> paths = Files.walk(Paths.get(mavenProject.getBuild().getTestSourceDirectory()))) {
-            paths.filter(Files::isRegularFile)
-                    .forEach(testFiles::add);
-        }
-        return testFiles;
-    }
-
     /* private List<Path> javaSources() {
         final List<Path> javaFiles = new ArrayList<>();
         try (final Stream<Path> paths = Files.walk(Paths.get(mavenProject.getBuild().getSourceDirectory()))) {
@@ -612,12 +1089,18 @@ public class ParserMojo extends AbstractParserMojo {
 
     private void backup(final JavaFile javaFile) throws IOException {
         final Path path = ParserPathManager.backupPath(javaFile.path());
+        JavaFile.flushPendingWrite(javaFile.path());
+        JavaFile.discardPendingWrite(path);
+        CompilationUnitCache.cache().invalidate(path);
         Files.copy(javaFile.path(), path, StandardCopyOption.REPLACE_EXISTING);
     }
 
 
     private void restore(final JavaFile javaFile) throws IOException {
         final Path path = ParserPathManager.backupPath(javaFile.path());
+        JavaFile.flushPendingWrite(path);
+        JavaFile.discardPendingWrite(javaFile.path());
+        CompilationUnitCache.cache().invalidate(javaFile.path());
         Files.copy(path, javaFile.path(), StandardCopyOption.REPLACE_EXISTING);
     }
 }
@@ -4,8 +4,15 @@ import edu.utexas.ece.sa.tools.detection.MavenDetectorPathManager;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.project.MavenProject;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class ParserPathManager extends MavenDetectorPathManager {
     public static final String BACKUP_EXTENSION = ".orig";
@@ -13,6 +20,8 @@ public class ParserPathManager extends MavenDetectorPathManager {
 
     public static final Path FIXER = Paths.get("fixer");
     public static final Path FIXER_LOG = Paths.get("fixer.log");
+    public static final Path TIMELINE = Paths.get("timeline.json");
+    public static final Path SPLIT_REPORT = Paths.get("split-report.json");
 
     public static Path fixer() {
         return path(FIXER);
@@ -26,6 +35,14 @@ public class ParserPathManager extends MavenDetectorPathManager {
         return fixer(Paths.get(dependentTest));
     }
 
+    public static Path timelinePath() {
+        return path(TIMELINE);
+    }
+
+    public static Path splitReportPath() {
+        return path(SPLIT_REPORT);
+    }
+
     public static Path backupPath(final Path path) {
         if (path.getParent() == null) {
             return Paths.get(path.getFileName().toString() + BACKUP_EXTENSION);
@@ -58,6 +75,40 @@ public class ParserPathManager extends MavenDetectorPathManager {
         return testBinDir.resolve(changeExtension(relative, "class"));
     }
 
+    public static Path compiledClassPath(final String className) {
+        final Path testBinDir = Paths.get(mavenProject.getBuild().getTestOutputDirectory());
+
+        return testBinDir.resolve(className.replace('.', File.separatorChar) + ".class");
+    }
+
+    /**
+     * @return The class file, if it exists, and those of the classes nested in it (Name$*.class), sorted.
+     */
+    public static List<Path> withNestedClassFiles(final Path classFile) {
+        final List<Path> classFiles = new ArrayList<>();
+        if (Files.exists(classFile)) {
+            classFiles.add(classFile);
+        }
+        final String nestedPrefix = classFile.getFileName().toString().replace(".class", "$");
+        if (classFile.getParent() != null && Files.isDirectory(classFile.getParent())) {
+            try (DirectoryStream<Path> nested = Files.newDirectoryStream(classFile.getParent(), nestedPrefix + "*.class")) {
+                for (final Path path : nested) {
+                    classFiles.add(path);
+                }
+            } catch (IOException ignored) {}
+        }
+        Collections.sort(classFiles);
+        return classFiles;
+    }
+
+    public static Path testOutputPath() {
+        return Paths.get(mavenProject.getBuild().getTestOutputDirectory());
+    }
+
+    public static Path mainOutputPath() {
+        return Paths.get(mavenProject.getBuild().getOutputDirectory());
+    }
+
     public ParserPathManager(MavenProject project) {
         super(project);
     }
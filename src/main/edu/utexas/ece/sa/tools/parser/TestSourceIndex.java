@@ -0,0 +1,248 @@
+package edu.utexas.ece.sa.tools.parser;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Test source files by simple and fully qualified class name, so lookups do not walk the source tree again.
+ *
+ * The tree is walked once; afterwards, a lookup that finds nothing rescans only the directories whose
+ * modification time changed, which picks up files created in the meantime (such as the generated *New classes).
+ * Qualified names come from the file's location under its source root.
+ */
+public class TestSourceIndex {
+    private static final Map<List<Root>, TestSourceIndex> indexes = new HashMap<>();
+
+    /**
+     * @return The index of the test sources of every module in the reactor of the project.
+     */
+    public static TestSourceIndex reactor(final MavenProject mavenProject) {
+        MavenProject upperProject = mavenProject;
+        while (upperProject.hasParent()) {
+            if (upperProject.getParent() == null || upperProject.getParent().getBasedir() == null) {
+                break;
+            }
+            upperProject = upperProject.getParent();
+        }
+        final List<Root> roots = new ArrayList<>();
+        if (upperProject.getCollectedProjects() != null && upperProject.getCollectedProjects().size() > 0) {
+            for (final MavenProject mp : upperProject.getCollectedProjects()) {
+                roots.add(Root.of(mp));
+            }
+        } else {
+            roots.add(Root.of(upperProject));
+        }
+        return of(roots);
+    }
+
+    /**
+     * @return The index of the test sources of the project alone.
+     */
+    public static TestSourceIndex module(final MavenProject mavenProject) {
+        return of(Collections.singletonList(Root.of(mavenProject)));
+    }
+
+    private static synchronized TestSourceIndex of(final List<Root> roots) {
+        return indexes.computeIfAbsent(roots, TestSourceIndex::new);
+    }
+
+    /**
+     * Adds a newly created source file to every index with a root containing it.
+     */
+    public static synchronized void recordCreated(final Path path) {
+        for (final TestSourceIndex index : indexes.values()) {
+            index.add(path);
+        }
+    }
+
+    private final List<Root> roots;
+    private final Map<String, List<Path>> bySimpleName = new HashMap<>();
+    private final Map<String, Path> byQualifiedName = new HashMap<>();
+    private final Map<Path, Root> rootOf = new LinkedHashMap<>();
+    private final Map<Path, Long> directoryTimes = new HashMap<>();
+
+    private TestSourceIndex(final List<Root> roots) {
+        this.roots = roots;
+        for (final Root root : roots) {
+            if (Files.isDirectory(root.sourceDir)) {
+                scan(root.sourceDir, root);
+            }
+        }
+    }
+
+    /**
+     * @return Every existing source file of the given simple class name, in the order they were found.
+     */
+    public synchronized List<Path> sourcesNamed(final String simpleName) {
+        List<Path> sources = existing(bySimpleName.get(simpleName));
+        if (sources.isEmpty() && refresh()) {
+            sources = existing(bySimpleName.get(simpleName));
+        }
+        return sources;
+    }
+
+    public synchronized Optional<Path> source(final String qualifiedName) {
+        Path source = byQualifiedName.get(qualifiedName);
+        if ((source == null || !Files.exists(source)) && refresh()) {
+            source = byQualifiedName.get(qualifiedName);
+        }
+        return Optional.ofNullable(source).filter(Files::exists);
+    }
+
+    /**
+     * @return Where the compiled class of the given test class goes, if its source is known.
+     */
+    public synchronized Optional<Path> compiledClass(final String qualifiedName) {
+        return source(qualifiedName).map(source -> {
+            final Root root = rootOf.get(source.getParent());
+            return root.outputDir.resolve(qualifiedName.replace('.', File.separatorChar) + ".class");
+        });
+    }
+
+    public synchronized List<Path> sources() {
+        return existing(byQualifiedName.values().stream().sorted().collect(Collectors.toList()));
+    }
+
+    private void add(final Path path) {
+        final Path file = path.toAbsolutePath();
+        for (final Root root : roots) {
+            if (file.startsWith(root.sourceDir)) {
+                addFile(file, root);
+                return;
+            }
+        }
+    }
+
+    // Rescans the directories that changed since they were scanned; returns whether any did
+    private boolean refresh() {
+        final List<Path> changed = new ArrayList<>();
+        final Iterator<Map.Entry<Path, Long>> iterator = directoryTimes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Path, Long> directory = iterator.next();
+            final long modified = modifiedTime(directory.getKey());
+            if (modified < 0) {
+                iterator.remove();
+            } else if (modified != directory.getValue()) {
+                changed.add(directory.getKey());
+            }
+        }
+        for (final Path directory : changed) {
+            directoryTimes.put(directory, modifiedTime(directory));
+            try (final Stream<Path> children = Files.list(directory)) {
+                children.forEach(child -> {
+                    if (Files.isDirectory(child)) {
+                        if (!directoryTimes.containsKey(child)) {
+                            scan(child, rootOf.get(directory));
+                        }
+                    } else {
+                        addFile(child, rootOf.get(directory));
+                    }
+                });
+            } catch (IOException ignored) {
+                // Removed while listing; its files are filtered out on lookup
+            }
+        }
+        return !changed.isEmpty();
+    }
+
+    private void scan(final Path start, final Root root) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                    directoryTimes.put(dir, attrs.lastModifiedTime().toMillis());
+                    rootOf.put(dir, root);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        addFile(file, root);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ignored) {
+            // Same as a tree without sources
+        }
+    }
+
+    private void addFile(final Path file, final Root root) {
+        final String fileName = file.getFileName().toString();
+        if (!FilenameUtils.isExtension(fileName, "java")) {
+            return;
+        }
+        rootOf.putIfAbsent(file.getParent(), root);
+        final String simpleName = FilenameUtils.removeExtension(fileName);
+        final List<Path> sameName = bySimpleName.computeIfAbsent(simpleName, name -> new ArrayList<>());
+        if (!sameName.contains(file)) {
+            sameName.add(file);
+        }
+        final String relative = FilenameUtils.removeExtension(root.sourceDir.relativize(file).toString());
+        byQualifiedName.put(relative.replace(File.separatorChar, '.'), file);
+    }
+
+    private static List<Path> existing(final List<Path> paths) {
+        if (paths == null) {
+            return Collections.emptyList();
+        }
+        return paths.stream().filter(Files::exists).collect(Collectors.toList());
+    }
+
+    private static long modifiedTime(final Path directory) {
+        try {
+            return Files.getLastModifiedTime(directory).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static class Root {
+        private final Path sourceDir;
+        private final Path outputDir;
+
+        private static Root of(final MavenProject project) {
+            return new Root(Paths.get(project.getBuild().getTestSourceDirectory()).toAbsolutePath(),
+                    Paths.get(project.getBuild().getTestOutputDirectory()).toAbsolutePath());
+        }
+
+        private Root(final Path sourceDir, final Path outputDir) {
+            this.sourceDir = sourceDir;
+            this.outputDir = outputDir;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Root)) {
+                return false;
+            }
+            final Root root = (Root) o;
+            return sourceDir.equals(root.sourceDir) && outputDir.equals(root.outputDir);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sourceDir.hashCode() + outputDir.hashCode();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package edu.utexas.ece.sa.tools.runner;
 
+import edu.illinois.cs.testrunner.configuration.Configuration;
 import edu.illinois.cs.testrunner.data.framework.TestFramework;
 import edu.illinois.cs.testrunner.data.results.TestRunResult;
 import edu.illinois.cs.testrunner.runner.Runner;
@@ -8,17 +9,33 @@ import edu.illinois.cs.testrunner.runner.TestInfoStore;
 import edu.illinois.cs.testrunner.util.ExecutionInfo;
 import edu.illinois.cs.testrunner.util.ExecutionInfoBuilder;
 import edu.illinois.cs.testrunner.util.TempFiles;
+import edu.utexas.ece.sa.tools.utility.Timeline;
+import org.apache.commons.io.FileUtils;
 import scala.collection.immutable.Stream;
 import scala.util.Failure;
+import scala.util.Success;
 import scala.util.Try;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
-public class InstrumentingSmartRunner extends SmartRunner {
+public class InstrumentingSmartRunner extends SmartRunner implements AutoCloseable {
     private Path outputPath;
     private File baseDir;
+    private OrderDaemon daemon;
+    private RunnerPool pool;
 
     public static InstrumentingSmartRunner fromRunner(final Runner runner, final File baseDir) {
         if (runner instanceof SmartRunner) {
@@ -36,6 +53,187 @@ public class InstrumentingSmartRunner extends SmartRunner {
         this.baseDir = baseDir;
     }
 
+    // Independent runner for a worker thread; the TestInfoStore is not synchronized, so each copy keeps its own
+    public InstrumentingSmartRunner copy() {
+        return new InstrumentingSmartRunner(framework(), new TestInfoStore(), classpath(), environment(), baseDir,
+                outputPath());
+    }
+
+    /**
+     * The pool of copies that orders are spread over, kept (along with any warm worker JVMs of the copies) until
+     * this runner is closed, and replaced only if a different number of workers is asked for.
+     */
+    public synchronized RunnerPool pool(final int workers) {
+        if (pool != null && pool.size() != Math.max(1, workers)) {
+            pool.close();
+            pool = null;
+        }
+        if (pool == null) {
+            pool = RunnerPool.fromRunner(this, workers);
+        }
+        return pool;
+    }
+
+    public File baseDir() {
+        return baseDir;
+    }
+
+    // Batched runs load test classes directly through JUnit 4, so other frameworks still go through runList
+    public boolean supportsBatches() {
+        return "JUnit".equals(framework().toString());
+    }
+
+    // Whether orders go to a warm worker JVM (parser.runner.daemon) instead of a fresh JVM per order
+    public boolean usesDaemon() {
+        return supportsBatches() && Configuration.config().getProperty("parser.runner.daemon", false);
+    }
+
+    /**
+     * Runs several orders in a single forked JVM, each in a fresh class loader (see {@link IsolatedOrderExecutor}),
+     * so the JVM startup is paid once per batch instead of once per order.
+     * With {@link #usesDaemon()}, the orders go to the runner's {@link OrderDaemon} instead.
+     * @return The result of each test, for each order in the same order as given.
+     */
+    public Try<List<Map<String, String>>> runOrders(final List<List<String>> orders) {
+        try (Timeline.Span span = Timeline.start(usesDaemon() ? "run-orders-daemon" : "run-orders",
+                orders.size() + " orders")) {
+            return usesDaemon() ? runOrdersOnDaemon(orders) : runOrdersInBatch(orders);
+        }
+    }
+
+    private Try<List<Map<String, String>>> runOrdersInBatch(final List<List<String>> orders) {
+        Path batchDir = null;
+        try {
+            batchDir = Files.createTempDirectory("orders");
+            final Path classpathFile = batchDir.resolve("classpath");
+            final Path ordersFile = batchDir.resolve("orders");
+            final Path resultsFile = batchDir.resolve("results");
+            Files.write(classpathFile, classpath().getBytes(StandardCharsets.UTF_8));
+            Files.write(ordersFile, orders.stream()
+                    .map(order -> String.join(IsolatedOrderExecutor.ORDER_SEPARATOR, order))
+                    .collect(Collectors.toList()));
+
+            final ProcessBuilder builder = new ProcessBuilder(javaCommand(), "-cp", executorClasspath(),
+                    IsolatedOrderExecutor.class.getName(), classpathFile.toString(), ordersFile.toString(),
+                    resultsFile.toString());
+            builder.environment().putAll(environment());
+            builder.directory(baseDir);
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(batchDir.resolve("output").toFile());
+            final Process process = builder.start();
+            final long timeout = timeoutSeconds(orders.stream().mapToInt(List::size).sum());
+            if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return new Failure<>(new IOException("Batched run of " + orders.size() + " orders timed out after "
+                        + timeout + " seconds"));
+            }
+            final int exitCode = process.exitValue();
+            if (exitCode != 0 || !Files.exists(resultsFile)) {
+                return new Failure<>(new IOException("Batched run of " + orders.size() + " orders exited with " +
+                        exitCode + ": " + new String(Files.readAllBytes(batchDir.resolve("output")),
+                        StandardCharsets.UTF_8)));
+            }
+
+            final List<Map<String, String>> results = new ArrayList<>();
+            for (int i = 0; i < orders.size(); i++) {
+                results.add(new LinkedHashMap<>());
+            }
+            for (final String line : Files.readAllLines(resultsFile)) {
+                final String[] fields = line.split(IsolatedOrderExecutor.FIELD_SEPARATOR);
+                results.get(Integer.parseInt(fields[0])).put(fields[1], fields[2]);
+            }
+            // A test that reported nothing did not pass
+            for (int i = 0; i < orders.size(); i++) {
+                for (final String test : orders.get(i)) {
+                    results.get(i).putIfAbsent(test, "ERROR");
+                }
+            }
+            return new Success<>(results);
+        } catch (Exception e) {
+            return new Failure<>(e);
+        } finally {
+            if (batchDir != null) {
+                FileUtils.deleteQuietly(batchDir.toFile());
+            }
+        }
+    }
+
+    private synchronized Try<List<Map<String, String>>> runOrdersOnDaemon(final List<List<String>> orders) {
+        try {
+            if (daemon == null || !daemon.isAlive()) {
+                closeDaemon();
+                daemon = OrderDaemon.start(classpath(), executorClasspath(), environment(), baseDir);
+            }
+            final List<Map<String, String>> results = new ArrayList<>();
+            for (final List<String> order : orders) {
+                results.add(daemon.run(order));
+            }
+            return new Success<>(results);
+        } catch (Exception e) {
+            // The worker may be stuck halfway through an order, so start over with a new one next time
+            closeDaemon();
+            return new Failure<>(e);
+        }
+    }
+
+    private synchronized void closeDaemon() {
+        if (daemon != null) {
+            daemon.close();
+            daemon = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (pool != null) {
+                pool.close();
+                pool = null;
+            }
+        }
+        closeDaemon();
+    }
+
+    /**
+     * How long a forked run of the given number of tests may take: parser.runner.timeoutSeconds if set, otherwise
+     * the offset plus the multiplier times the per-test allowance of the runner's own timeout.
+     */
+    static long timeoutSeconds(final int tests) {
+        final int configured = Configuration.config().getProperty("parser.runner.timeoutSeconds", 0);
+        if (configured > 0) {
+            return configured;
+        }
+        final double multiplier = Double.parseDouble(
+                Configuration.config().getProperty("testplugin.runner.smart.timeout.multiplier", "4"));
+        final double offset = Double.parseDouble(
+                Configuration.config().getProperty("testplugin.runner.smart.timeout.offset", "5"));
+        final double perTest = Double.parseDouble(
+                Configuration.config().getProperty("testplugin.runner.smart.timeout.pertest", "2"));
+        return (long) Math.ceil(offset + multiplier * perTest * tests);
+    }
+
+    static String javaCommand() {
+        return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    // The executor itself plus the project's own JUnit 4, so the tests see the JUnit version they were built with
+    String executorClasspath() throws IOException, URISyntaxException {
+        final List<String> entries = new ArrayList<>();
+        entries.add(new File(IsolatedOrderExecutor.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .getPath());
+        final List<String> junitEntries = Arrays.stream(classpath().split(File.pathSeparator))
+                .filter(entry -> {
+                    final String name = new File(entry).getName();
+                    return name.startsWith("junit-") || name.startsWith("hamcrest-");
+                })
+                .collect(Collectors.toList());
+        if (junitEntries.stream().noneMatch(entry -> new File(entry).getName().startsWith("junit-"))) {
+            throw new IOException("No JUnit 4 jar on the test classpath");
+        }
+        entries.addAll(junitEntries);
+        return String.join(File.pathSeparator, entries);
+    }
+
     @Override
     public ExecutionInfo execution(final Stream<String> testOrder, final ExecutionInfoBuilder executionInfoBuilder) {
         final ExecutionInfoBuilder builder;
@@ -51,23 +249,25 @@ public class InstrumentingSmartRunner extends SmartRunner {
     @Override
     public Try<TestRunResult> runWithCp(final String cp, final Stream<String> testOrder) {
         // Save stdout,stderr, and run result to a file
-        final Try<Try<TestRunResult>> result = TempFiles.withTempFile(outputPath -> {
-            try {
-                writeTo(outputPath);
+        try (Timeline.Span span = Timeline.start("run-list")) {
+            final Try<Try<TestRunResult>> result = TempFiles.withTempFile(outputPath -> {
+                try {
+                    writeTo(outputPath);
 
-                final Try<TestRunResult> testRunResultTry = super.runWithCp(cp, testOrder);
+                    final Try<TestRunResult> testRunResultTry = super.runWithCp(cp, testOrder);
 
-                if (testRunResultTry.isSuccess()) {
-                    RunnerPathManager.outputResult(outputPath, testRunResultTry.get());
-                }
+                    if (testRunResultTry.isSuccess()) {
+                        RunnerPathManager.outputResult(outputPath, testRunResultTry.get());
+                    }
 
-                return testRunResultTry;
-            } catch (Exception e){
-                return new Failure<>(e);
-            }
-        });
+                    return testRunResultTry;
+                } catch (Exception e){
+                    return new Failure<>(e);
+                }
+            });
 
-        return result.get();
+            return result.get();
+        }
     }
 
     private void writeTo(final Path outputPath) {
@@ -0,0 +1,198 @@
+package edu.utexas.ece.sa.tools.runner;
+
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Runs JUnit 4 test orders inside one JVM, loading the test classes of every order in a fresh class loader so
+ * that static state does not leak from one order into the next.
+ *
+ * Used as the main class of the JVM forked by {@link InstrumentingSmartRunner#runOrders(List)}, with the files
+ * holding the test classpath, the orders (one per line, tests separated by ";") and the results to write
+ * (one "order index, test, result" line per test, separated by tabs).
+ *
+ * With "--serve" and the classpath file, it instead stays up as an {@link OrderDaemon}: it reads one order per
+ * line from stdin and answers with one "test, result" line per test, followed by {@link #END_OF_RESULTS}.
+ */
+public class IsolatedOrderExecutor {
+    public static final String ORDER_SEPARATOR = ";";
+    public static final String FIELD_SEPARATOR = "\t";
+    public static final String SERVE = "--serve";
+    public static final String END_OF_RESULTS = "END";
+    public static final String FAILED = "FAILED";
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals(SERVE)) {
+            serve(readClasspath(args[1]));
+            System.exit(0);
+        }
+        final URL[] classpath = readClasspath(args[0]);
+        final List<String> orders = Files.readAllLines(Paths.get(args[1]));
+
+        try (final BufferedWriter writer = Files.newBufferedWriter(Paths.get(args[2]))) {
+            for (int i = 0; i < orders.size(); i++) {
+                final List<String> order = Arrays.asList(orders.get(i).split(ORDER_SEPARATOR));
+                for (final Map.Entry<String, String> result : runOrder(classpath, order).entrySet()) {
+                    writer.write(i + FIELD_SEPARATOR + result.getKey() + FIELD_SEPARATOR + result.getValue());
+                    writer.newLine();
+                }
+            }
+        }
+        // Tests may leave non-daemon threads behind
+        System.exit(0);
+    }
+
+    private static void serve(final URL[] classpath) throws IOException {
+        // Stdout carries the protocol, so whatever the tests print goes to stderr instead
+        final PrintStream protocol = System.out;
+        System.setOut(System.err);
+        final BufferedReader requests = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = requests.readLine()) != null) {
+            try {
+                for (final Map.Entry<String, String> result :
+                        runOrder(classpath, Arrays.asList(line.split(ORDER_SEPARATOR))).entrySet()) {
+                    protocol.println(result.getKey() + FIELD_SEPARATOR + result.getValue());
+                }
+            } catch (Throwable t) {
+                protocol.println(FAILED + FIELD_SEPARATOR + t);
+            }
+            protocol.println(END_OF_RESULTS);
+            protocol.flush();
+        }
+    }
+
+    private static URL[] readClasspath(final String classpathFile) throws IOException {
+        return toUrls(new String(Files.readAllBytes(Paths.get(classpathFile)), StandardCharsets.UTF_8).trim());
+    }
+
+    public static URL[] toUrls(final String classpath) throws MalformedURLException {
+        final List<URL> urls = new ArrayList<>();
+        for (final String entry : classpath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                urls.add(new File(entry).toURI().toURL());
+            }
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    /**
+     * Runs the tests in the given order, in a class loader of their own.
+     * @return The result (PASS, FAILURE, ERROR or SKIPPED) of each test that ran, in the order they ran.
+     */
+    public static Map<String, String> runOrder(final URL[] classpath, final List<String> order) throws IOException {
+        final Map<String, String> results = new LinkedHashMap<>();
+        final Thread thread = Thread.currentThread();
+        final ClassLoader previousLoader = thread.getContextClassLoader();
+        // JUnit itself comes from the parent loader, so only the test classes and their dependencies are reloaded
+        try (final URLClassLoader loader = new URLClassLoader(classpath, IsolatedOrderExecutor.class.getClassLoader())) {
+            thread.setContextClassLoader(loader);
+            // Consecutive tests of the same class run as one request, so class-level setup runs once per run of tests
+            int start = 0;
+            while (start < order.size()) {
+                final String className = className(order.get(start));
+                int end = start + 1;
+                while (end < order.size() && className(order.get(end)).equals(className)) {
+                    end++;
+                }
+                runClass(loader, className, order.subList(start, end), results);
+                start = end;
+            }
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+        }
+        return results;
+    }
+
+    private static void runClass(final ClassLoader loader, final String className, final List<String> tests,
+                                 final Map<String, String> results) {
+        final Class<?> testClass;
+        try {
+            testClass = Class.forName(className, false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            tests.forEach(test -> results.put(test, "ERROR"));
+            return;
+        }
+
+        final List<String> methods = tests.stream().map(IsolatedOrderExecutor::methodName).collect(Collectors.toList());
+        final Request request = Request.aClass(testClass)
+                .filterWith(new Filter() {
+                    @Override
+                    public boolean shouldRun(final Description description) {
+                        return description.getMethodName() == null || methods.contains(description.getMethodName());
+                    }
+
+                    @Override
+                    public String describe() {
+                        return "methods " + methods;
+                    }
+                })
+                .sortWith(Comparator.comparingInt(description -> methods.indexOf(description.getMethodName())));
+
+        final JUnitCore core = new JUnitCore();
+        core.addListener(new RunListener() {
+            @Override
+            public void testStarted(final Description description) {
+                results.put(testName(description), "PASS");
+            }
+
+            @Override
+            public void testFailure(final Failure failure) {
+                final String result = failure.getException() instanceof AssertionError ? "FAILURE" : "ERROR";
+                if (failure.getDescription().getMethodName() == null) {
+                    // Class-level setup failed, so none of the tests could pass
+                    tests.forEach(test -> results.put(test, result));
+                } else {
+                    results.put(testName(failure.getDescription()), result);
+                }
+            }
+
+            @Override
+            public void testAssumptionFailure(final Failure failure) {
+                results.put(testName(failure.getDescription()), "SKIPPED");
+            }
+
+            @Override
+            public void testIgnored(final Description description) {
+                results.put(testName(description), "SKIPPED");
+            }
+        });
+        core.run(request);
+    }
+
+    private static String testName(final Description description) {
+        return description.getClassName() + "." + description.getMethodName();
+    }
+
+    private static String className(final String test) {
+        return test.substring(0, test.lastIndexOf('.'));
+    }
+
+    private static String methodName(final String test) {
+        return test.substring(test.lastIndexOf('.') + 1);
+    }
+}
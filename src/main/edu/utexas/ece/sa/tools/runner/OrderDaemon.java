@@ -0,0 +1,139 @@
+package edu.utexas.ece.sa.tools.runner;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A worker JVM that stays up between orders, so JVM startup and JIT warmup are paid once instead of once per
+ * order. Orders go over the worker's stdin and results come back over its stdout; the worker runs every order
+ * in a fresh class loader (see {@link IsolatedOrderExecutor}), so static state is still reset between orders.
+ * An order that does not finish in time kills the worker, so the caller can fall back to a JVM per order.
+ */
+public class OrderDaemon implements AutoCloseable {
+    public static OrderDaemon start(final String classpath, final String executorClasspath,
+                                    final Map<String, String> environment, final File baseDir) throws IOException {
+        final Path workDir = Files.createTempDirectory("order-daemon");
+        final Path classpathFile = workDir.resolve("classpath");
+        Files.write(classpathFile, classpath.getBytes(StandardCharsets.UTF_8));
+
+        final ProcessBuilder builder = new ProcessBuilder(InstrumentingSmartRunner.javaCommand(), "-cp",
+                executorClasspath, IsolatedOrderExecutor.class.getName(), IsolatedOrderExecutor.SERVE,
+                classpathFile.toString());
+        builder.environment().putAll(environment);
+        builder.directory(baseDir);
+        builder.redirectError(workDir.resolve("output").toFile());
+        return new OrderDaemon(builder.start(), workDir);
+    }
+
+    private final Process process;
+    private final Path workDir;
+    private final BufferedWriter requests;
+    private final BufferedReader responses;
+    private final Thread shutdownHook;
+    // Reads the results, so that waiting for them can time out
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "order-daemon-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private OrderDaemon(final Process process, final Path workDir) {
+        this.process = process;
+        this.workDir = workDir;
+        this.requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        this.responses = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        this.shutdownHook = new Thread(process::destroyForcibly);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * @return The result (PASS, FAILURE, ERROR or SKIPPED) of each test in the order.
+     */
+    public synchronized Map<String, String> run(final List<String> order) throws IOException {
+        requests.write(String.join(IsolatedOrderExecutor.ORDER_SEPARATOR, order));
+        requests.newLine();
+        requests.flush();
+
+        final long timeout = InstrumentingSmartRunner.timeoutSeconds(order.size());
+        final Future<Map<String, String>> results = reader.submit(() -> readResults(order));
+        try {
+            return results.get(timeout, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            // Closes the worker's stdout as well, which ends the read
+            process.destroyForcibly();
+            throw new IOException("Order daemon did not finish " + order + " within " + timeout + " seconds");
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while the order daemon ran " + order, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private Map<String, String> readResults(final List<String> order) throws IOException {
+        final Map<String, String> results = new LinkedHashMap<>();
+        String line;
+        while ((line = responses.readLine()) != null && !line.equals(IsolatedOrderExecutor.END_OF_RESULTS)) {
+            final String[] fields = line.split(IsolatedOrderExecutor.FIELD_SEPARATOR, 2);
+            if (fields[0].equals(IsolatedOrderExecutor.FAILED)) {
+                throw new IOException("Order daemon could not run " + order + ": " + fields[1]);
+            }
+            results.put(fields[0], fields[1]);
+        }
+        if (line == null) {
+            throw new IOException("Order daemon exited while running " + order + ": " +
+                    new String(Files.readAllBytes(workDir.resolve("output")), StandardCharsets.UTF_8));
+        }
+        return results;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            // The worker exits once its stdin is closed
+            requests.close();
+            if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (IOException e) {
+            process.destroyForcibly();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ignored) {
+                // Already shutting down, the hook takes care of the worker
+            }
+            reader.shutdownNow();
+            FileUtils.deleteQuietly(workDir.toFile());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package edu.utexas.ece.sa.tools.runner;
+
+import edu.illinois.cs.testrunner.runner.Runner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * A fixed set of independent runners, each forking its own JVMs, that candidate orders are spread over.
+ */
+public class RunnerPool implements AutoCloseable {
+    public static RunnerPool fromRunner(final InstrumentingSmartRunner runner, final int workers) {
+        final List<InstrumentingSmartRunner> runners = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            runners.add(runner.copy());
+        }
+        return new RunnerPool(runners);
+    }
+
+    private final List<InstrumentingSmartRunner> runners;
+    private final BlockingQueue<InstrumentingSmartRunner> idleRunners;
+    private final ExecutorService executor;
+    private final int size;
+
+    private RunnerPool(final List<InstrumentingSmartRunner> runners) {
+        this.runners = runners;
+        this.idleRunners = new LinkedBlockingQueue<>(runners);
+        this.size = runners.size();
+        this.executor = Executors.newFixedThreadPool(size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Applies the task to every input on whichever runner is free.
+     * @return The outputs in the same order as the inputs, independent of completion order.
+     */
+    public <I, O> List<O> map(final List<I> inputs, final BiFunction<Runner, I, O> task) {
+        final List<Future<O>> futures = new ArrayList<>();
+        for (final I input : inputs) {
+            futures.add(executor.submit(() -> {
+                final InstrumentingSmartRunner runner = idleRunners.take();
+                try {
+                    return task.apply(runner, input);
+                } finally {
+                    idleRunners.put(runner);
+                }
+            }));
+        }
+        return outputs(futures);
+    }
+
+    /**
+     * Like {@link #map}, but once an output meets the stop condition, the inputs that have not started are
+     * skipped; the tasks already running finish.
+     * @return The outputs in the same order as the inputs, null for the skipped ones.
+     */
+    public <I, O> List<O> mapUntil(final List<I> inputs, final BiFunction<Runner, I, O> task,
+                                   final Predicate<O> stop) {
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        final List<Future<O>> futures = new ArrayList<>();
+        for (final I input : inputs) {
+            futures.add(executor.submit(() -> {
+                if (stopped.get()) {
+                    return null;
+                }
+                final InstrumentingSmartRunner runner = idleRunners.take();
+                try {
+                    // A task may have stopped the rest while this one waited for a runner
+                    if (stopped.get()) {
+                        return null;
+                    }
+                    final O output = task.apply(runner, input);
+                    if (stop.test(output)) {
+                        stopped.set(true);
+                    }
+                    return output;
+                } finally {
+                    idleRunners.put(runner);
+                }
+            }));
+        }
+        return outputs(futures);
+    }
+
+    private static <O> List<O> outputs(final List<Future<O>> futures) {
+        final List<O> outputs = new ArrayList<>();
+        try {
+            for (final Future<O> future : futures) {
+                outputs.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return outputs;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        runners.forEach(InstrumentingSmartRunner::close);
+    }
+}
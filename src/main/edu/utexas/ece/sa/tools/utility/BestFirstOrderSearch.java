@@ -0,0 +1,144 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Searches for an order with fewer failures by rearranging the best orders found so far.
+ *
+ * Orders wait in a frontier sorted by their number of failures, earliest found first among equals. Each step takes
+ * the best few orders off the frontier and expands them into their neighbours. It then runs every neighbour not
+ * seen before as one batch, so the batch can be spread over several runners. Only a neighbour with fewer failures
+ * than the order it came from joins the frontier. The search stops once an order passes, the frontier runs dry, it
+ * has evaluated its maximum number of orders, or the stop condition holds.
+ */
+public class BestFirstOrderSearch {
+    /**
+     * The orders to try after an order with the given failed tests.
+     */
+    public interface Expansion {
+        List<PackedOrder> neighbours(PackedOrder order, Set<String> failedTests);
+    }
+
+    /**
+     * Moves each failed test to the front, one at a time, in the order the tests run.
+     */
+    public static final Expansion FAILED_TO_FRONT = (order, failedTests) -> {
+        final List<PackedOrder> neighbours = new ArrayList<>();
+        for (int position = 1; position < order.size(); position++) {
+            if (failedTests.contains(TestIds.name(order.id(position)))) {
+                neighbours.add(order.moveToFront(position));
+            }
+        }
+        return neighbours;
+    };
+
+    private final Expansion expansion;
+    private final Function<List<PackedOrder>, List<Set<String>>> runOrders;
+    private final int beamWidth;
+    private final int maxEvaluations;
+    private final BooleanSupplier stop;
+
+    private final PriorityQueue<Node> frontier = new PriorityQueue<>(
+            Comparator.comparingInt((Node node) -> node.failedTests.size()).thenComparingLong(node -> node.found));
+    private final Set<PackedOrder> visited = new HashSet<>();
+    private long found = 0;
+    private int evaluations = 0;
+    private PackedOrder bestOrder;
+    private Set<String> bestFailedTests;
+
+    /**
+     * @param runOrders Runs a batch of orders and returns the tests that failed in each, or null for an order that
+     *                  did not run.
+     * @param beamWidth The number of orders taken off the frontier and expanded together.
+     */
+    public BestFirstOrderSearch(final Expansion expansion,
+                                final Function<List<PackedOrder>, List<Set<String>>> runOrders,
+                                final int beamWidth, final int maxEvaluations, final BooleanSupplier stop) {
+        this.expansion = expansion;
+        this.runOrders = runOrders;
+        this.beamWidth = Math.max(1, beamWidth);
+        this.maxEvaluations = maxEvaluations;
+        this.stop = stop;
+    }
+
+    /**
+     * @return The order with the fewest failures seen, which is the start order if none did better.
+     */
+    public PackedOrder search(final PackedOrder start, final Set<String> failedTests) {
+        bestOrder = start;
+        bestFailedTests = failedTests;
+        visited.add(start);
+        frontier.add(new Node(start, failedTests, found++));
+
+        while (!frontier.isEmpty() && !bestFailedTests.isEmpty() && evaluations < maxEvaluations
+                && !stop.getAsBoolean()) {
+            final List<Node> parents = new ArrayList<>();
+            final List<PackedOrder> candidates = new ArrayList<>();
+            for (int i = 0; i < beamWidth && !frontier.isEmpty(); i++) {
+                final Node node = frontier.poll();
+                for (final PackedOrder neighbour : expansion.neighbours(node.order, node.failedTests)) {
+                    if (evaluations + candidates.size() < maxEvaluations && visited.add(neighbour)) {
+                        parents.add(node);
+                        candidates.add(neighbour);
+                    }
+                }
+            }
+            if (candidates.isEmpty()) {
+                continue;
+            }
+
+            final List<Set<String>> results = runOrders.apply(candidates);
+            boolean ranAll = true;
+            for (int i = 0; i < candidates.size(); i++) {
+                final Set<String> candidateFailedTests = i < results.size() ? results.get(i) : null;
+                if (candidateFailedTests == null) {
+                    ranAll = false;
+                    continue;
+                }
+                evaluations++;
+                if (candidateFailedTests.size() < bestFailedTests.size()) {
+                    bestOrder = candidates.get(i);
+                    bestFailedTests = candidateFailedTests;
+                }
+                if (candidateFailedTests.size() < parents.get(i).failedTests.size()) {
+                    frontier.add(new Node(candidates.get(i), candidateFailedTests, found++));
+                }
+            }
+            if (!ranAll) {
+                break;
+            }
+        }
+        return bestOrder;
+    }
+
+    public PackedOrder bestOrder() {
+        return bestOrder;
+    }
+
+    public int bestFailures() {
+        return bestFailedTests.size();
+    }
+
+    public int evaluations() {
+        return evaluations;
+    }
+
+    private static final class Node {
+        private final PackedOrder order;
+        private final Set<String> failedTests;
+        private final long found;
+
+        private Node(final PackedOrder order, final Set<String> failedTests, final long found) {
+            this.order = order;
+            this.failedTests = failedTests;
+            this.found = found;
+        }
+    }
+}
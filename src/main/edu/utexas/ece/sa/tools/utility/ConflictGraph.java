@@ -0,0 +1,79 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests that must not share a class, and their partition into as few classes as those conflicts allow.
+ */
+public class ConflictGraph {
+    private final Map<String, Set<String>> conflicts = new LinkedHashMap<>();
+
+    public void addTest(final String test) {
+        conflicts.computeIfAbsent(test, t -> new LinkedHashSet<>());
+    }
+
+    public void addConflict(final String test, final String otherTest) {
+        addTest(test);
+        addTest(otherTest);
+        if (!test.equals(otherTest)) {
+            conflicts.get(test).add(otherTest);
+            conflicts.get(otherTest).add(test);
+        }
+    }
+
+    public Set<String> conflicts(final String test) {
+        return Collections.unmodifiableSet(conflicts.getOrDefault(test, Collections.emptySet()));
+    }
+
+    /**
+     * Colors the graph with DSatur: the next test is the one whose conflicts already have the most distinct groups
+     * (then the one with the most conflicts, then the first added), and it joins the first group none of them is in.
+     * @return The groups, each with its tests in the order they were added.
+     */
+    public List<List<String>> color() {
+        final Map<String, Integer> groups = new HashMap<>();
+        final Map<String, Set<Integer>> conflictGroups = new HashMap<>();
+        int groupCount = 0;
+        while (groups.size() < conflicts.size()) {
+            String next = null;
+            int nextSaturation = -1;
+            for (final String test : conflicts.keySet()) {
+                if (groups.containsKey(test)) {
+                    continue;
+                }
+                final int saturation = conflictGroups.getOrDefault(test, Collections.emptySet()).size();
+                if (saturation > nextSaturation || (saturation == nextSaturation
+                        && conflicts.get(test).size() > conflicts.get(next).size())) {
+                    next = test;
+                    nextSaturation = saturation;
+                }
+            }
+            final Set<Integer> taken = conflictGroups.getOrDefault(next, Collections.emptySet());
+            int group = 0;
+            while (taken.contains(group)) {
+                group++;
+            }
+            groups.put(next, group);
+            groupCount = Math.max(groupCount, group + 1);
+            for (final String conflict : conflicts.get(next)) {
+                conflictGroups.computeIfAbsent(conflict, t -> new LinkedHashSet<>()).add(group);
+            }
+        }
+
+        final List<List<String>> coloring = new ArrayList<>();
+        for (int i = 0; i < groupCount; i++) {
+            coloring.add(new ArrayList<>());
+        }
+        for (final String test : conflicts.keySet()) {
+            coloring.get(groups.get(test)).add(test);
+        }
+        return coloring;
+    }
+}
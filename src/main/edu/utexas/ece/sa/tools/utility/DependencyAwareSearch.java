@@ -0,0 +1,253 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Searches the orders of a small class for the fewest failures without running every permutation.
+ *
+ * Every run records, for each test, the tests that ran before it and whether it failed. Once a test has both
+ * passed and failed, its candidate polluters and setters are learned from those runs, and only the relative
+ * position of the (candidate, test) pairs is assumed to decide its outcome. Since the first two runs put every
+ * pair in both positions, a test whose outcome never changed has no single polluter or setter and is treated as
+ * order-independent, like iDFlakies does, until some later run flips it. An order is only run if the
+ * orientation of the relevant pairs differs from every order run so far; the other orders are expected to
+ * repeat the outcome of the run they match and are skipped.
+ *
+ * While no pair is learned nothing tells two orders apart, so every candidate runs, as a plain brute force would,
+ * and the stop condition bounds the search. The walk also ends once every orientation of the pairs has run, or
+ * after {@link #MAX_SKIPPED_IN_A_ROW} candidates in a row were skipped.
+ */
+public class DependencyAwareSearch {
+    public static final int MAX_SKIPPED_IN_A_ROW = 100000;
+
+    private final List<String> tests;
+    private final Function<List<String>, Set<String>> runOrder;
+
+    private final Map<String, List<Observation>> observations = new HashMap<>();
+    private final List<List<String>> executedOrders = new ArrayList<>();
+    private Set<String> executedSignatures = new HashSet<>();
+    private List<Pair> relevantPairs = new ArrayList<>();
+
+    private int runs = 0;
+    private int skipped = 0;
+    private int minFailures;
+    private List<String> bestOrder;
+
+    /**
+     * @param runOrder Runs one order and returns the tests that failed in it.
+     */
+    public DependencyAwareSearch(final List<String> tests, final Function<List<String>, Set<String>> runOrder) {
+        this.tests = new ArrayList<>(tests);
+        this.runOrder = runOrder;
+        this.minFailures = tests.size();
+        this.bestOrder = new ArrayList<>(tests);
+    }
+
+    /**
+     * Runs the original and the reversed order, which between them put every pair of tests in both positions,
+     * then walks the candidates, running only orders that are not equivalent to one already run.
+     * @return The fewest failures seen.
+     */
+    public int search(final Iterable<List<String>> candidates) {
+        return search(candidates, () -> false);
+    }
+
+    /**
+     * Like {@link #search(Iterable)}, but also stops once the given condition holds.
+     */
+    public int search(final Iterable<List<String>> candidates, final BooleanSupplier stop) {
+        final List<String> reversed = new ArrayList<>(tests);
+        Collections.reverse(reversed);
+        consider(tests, true);
+        consider(reversed, true);
+        int skippedInARow = 0;
+        for (final List<String> candidate : candidates) {
+            if (minFailures == 0 || stop.getAsBoolean() || allOrientationsRun()) {
+                break;
+            }
+            if (consider(candidate, false)) {
+                skippedInARow = 0;
+            } else if (++skippedInARow >= MAX_SKIPPED_IN_A_ROW) {
+                System.out.println("DEPENDENCY-AWARE SEARCH STOPPED AFTER SKIPPING " + skippedInARow
+                        + " ORDERS IN A ROW");
+                break;
+            }
+        }
+        return minFailures;
+    }
+
+    // Whether every orientation of the learned pairs has run, so any other candidate would be skipped
+    private boolean allOrientationsRun() {
+        return !relevantPairs.isEmpty() && relevantPairs.size() < 31
+                && executedSignatures.size() >= (1 << relevantPairs.size());
+    }
+
+    /**
+     * @return Whether the order ran, rather than being skipped as equivalent to one that did.
+     */
+    private boolean consider(final List<String> order, final boolean force) {
+        // Without a learned pair every order has the same signature, which says nothing about its outcome
+        if (!force && !relevantPairs.isEmpty() && executedSignatures.contains(signature(order))) {
+            skipped++;
+            return false;
+        }
+        final Set<String> failedTests = runOrder.apply(order);
+        runs++;
+        if (failedTests.size() < minFailures) {
+            minFailures = failedTests.size();
+            bestOrder = new ArrayList<>(order);
+        }
+        executedOrders.add(new ArrayList<>(order));
+        learn(order, failedTests);
+        executedSignatures.add(signature(order));
+        return true;
+    }
+
+    private void learn(final List<String> order, final Set<String> failedTests) {
+        final List<Pair> previousPairs = relevantPairs;
+        final Set<String> predecessors = new HashSet<>();
+        for (final String test : order) {
+            observations.computeIfAbsent(test, t -> new ArrayList<>())
+                    .add(new Observation(new HashSet<>(predecessors), failedTests.contains(test)));
+            predecessors.add(test);
+        }
+
+        final SortedSet<Pair> pairs = new TreeSet<>();
+        for (final String test : tests) {
+            pairs.addAll(dependencies(test));
+        }
+        relevantPairs = new ArrayList<>(pairs);
+        // Orders that looked equivalent under the old pairs may differ under the new ones
+        if (!relevantPairs.equals(previousPairs)) {
+            executedSignatures = new HashSet<>();
+            for (final List<String> executed : executedOrders) {
+                executedSignatures.add(signature(executed));
+            }
+        }
+    }
+
+    /**
+     * A single polluter preceded the test in every failing run and in no passing run, and a single setter the
+     * other way around. If no test fits, the test depends on a combination of tests, and every test that
+     * preceded it in only one of a failing and a passing run is kept as a candidate.
+     */
+    private Set<Pair> dependencies(final String test) {
+        final Set<Pair> pairs = new HashSet<>();
+        final List<Observation> failing = new ArrayList<>();
+        final List<Observation> passing = new ArrayList<>();
+        for (final Observation observation : observations.getOrDefault(test, Collections.emptyList())) {
+            (observation.failed ? failing : passing).add(observation);
+        }
+        if (failing.isEmpty() || passing.isEmpty()) {
+            return pairs;
+        }
+
+        for (final String candidate : tests) {
+            if (!candidate.equals(test) && (alwaysBefore(candidate, failing, passing)
+                    || alwaysBefore(candidate, passing, failing))) {
+                pairs.add(new Pair(candidate, test));
+            }
+        }
+        if (!pairs.isEmpty()) {
+            return pairs;
+        }
+
+        for (final Observation failed : failing) {
+            for (final Observation passed : passing) {
+                addDifference(pairs, test, failed.predecessors, passed.predecessors);
+                addDifference(pairs, test, passed.predecessors, failed.predecessors);
+            }
+        }
+        return pairs;
+    }
+
+    private static boolean alwaysBefore(final String candidate, final List<Observation> present,
+                                        final List<Observation> absent) {
+        for (final Observation observation : present) {
+            if (!observation.predecessors.contains(candidate)) {
+                return false;
+            }
+        }
+        for (final Observation observation : absent) {
+            if (observation.predecessors.contains(candidate)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addDifference(final Set<Pair> pairs, final String test, final Set<String> predecessors,
+                                      final Set<String> otherPredecessors) {
+        for (final String candidate : predecessors) {
+            if (!otherPredecessors.contains(candidate)) {
+                pairs.add(new Pair(candidate, test));
+            }
+        }
+    }
+
+    private String signature(final List<String> order) {
+        final Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            positions.put(order.get(i), i);
+        }
+        final StringBuilder sb = new StringBuilder(relevantPairs.size());
+        for (final Pair pair : relevantPairs) {
+            sb.append(positions.get(pair.before) < positions.get(pair.after) ? '1' : '0');
+        }
+        return sb.toString();
+    }
+
+    public int runs() {
+        return runs;
+    }
+
+    public int skipped() {
+        return skipped;
+    }
+
+    public List<String> bestOrder() {
+        return bestOrder;
+    }
+
+    private static final class Observation {
+        private final Set<String> predecessors;
+        private final boolean failed;
+
+        private Observation(final Set<String> predecessors, final boolean failed) {
+            this.predecessors = predecessors;
+            this.failed = failed;
+        }
+    }
+
+    private static final class Pair implements Comparable<Pair> {
+        private final String before;
+        private final String after;
+
+        private Pair(final String before, final String after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public int compareTo(final Pair other) {
+            final int cmp = after.compareTo(other.after);
+            return cmp != 0 ? cmp : before.compareTo(other.before);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Pair)) {
+                return false;
+            }
+            final Pair other = (Pair) o;
+            return before.equals(other.before) && after.equals(other.after);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(before, after);
+        }
+    }
+}
@@ -2,34 +2,45 @@ package edu.utexas.ece.sa.tools.utility;
 
 import com.reedoei.eunomia.util.StandardMain;
 import edu.illinois.cs.testrunner.configuration.Configuration;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class GetMavenTestOrder extends StandardMain {
+    private static final byte[] RUNNING = "Running ".getBytes(StandardCharsets.US_ASCII);
 
     private boolean mvnTestMustPass = Boolean.parseBoolean(Configuration.config().getProperty("dt.mvn_test.must_pass","true"));
     
     @Override
     protected void run() throws Exception {
-        final List<String> classOrder = getClassOrder(mvnTestLog.toFile());
+        final Map<String, Integer> classOrder = getClassOrder(mvnTestLog.toFile());
 
         TreeMap<Long, List<TestClassData>> timeToTestClass = testClassDataMap();
 
@@ -37,101 +48,101 @@ public class GetMavenTestOrder extends StandardMain {
         for (Long time : timeToTestClass.keySet()) {
             sb.append(time);
             sb.append(" :\n");
-            List<TestClassData> dataList = timeToTestClass.get(time);
+            for (TestClassData data : inRunOrder(timeToTestClass.get(time), classOrder)) {
+                setStringBuilderTestClassData(data, sb);
+            }
+        }
+    }
 
-            if (dataList.size() > 1) {
-                TreeMap<Integer, List<TestClassData>> indexToTestClass = new TreeMap<>();
+    private TreeMap<Long, List<TestClassData>> testClassDataMap() throws IOException, ParserConfigurationException, SAXException {
+        final List<Path> allResultsFolders;
+        try (Stream<Path> paths = Files.walk(sureFireDirectory)) {
+            allResultsFolders = paths.filter(path -> path.toString().contains("TEST-"))
+                    .collect(Collectors.toList());
+        }
 
-                for (TestClassData data : dataList) {
-                    int index = classOrder.indexOf(data.className);
-                    List<TestClassData> currentList = indexToTestClass.get(index);
-                    if (currentList == null) {
-                        currentList = new ArrayList<>();
-                    }
-                    currentList.add(data);
+        // Reports are parsed in parallel, but collected in the order they were found
+        final int threads = Math.max(1, Math.min(allResultsFolders.size(),
+                Configuration.config().getProperty("parser.reports.threads",
+                        Math.min(4, Runtime.getRuntime().availableProcessors()))));
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<TestClassData>> parsed = new ArrayList<>();
+        try {
+            for (final Path p : allResultsFolders) {
+                parsed.add(executor.submit(() -> parseXML(p.toFile())));
+            }
 
-                    indexToTestClass.put(index, currentList);
-                }
+            TreeMap<Long, List<TestClassData>> timeToTestClass = new TreeMap<>();
+            for (int i = 0; i < allResultsFolders.size(); i++) {
+                File f = allResultsFolders.get(i).toFile();
+                long time = f.lastModified();
 
-                for (Integer index : indexToTestClass.keySet()) {
-                    List<TestClassData> indexList = indexToTestClass.get(index);
-                    if (indexList.size() > 1) {
-                        for (TestClassData data : indexList) {
-                            setStringBuilderTestClassData(data, sb);
-                        }
-                    } else {
-                        setStringBuilderTestClassData(indexList.get(0), sb);
-                    }
+                List<TestClassData> currentList = timeToTestClass.get(time);
+                if (currentList == null) {
+                    currentList = new ArrayList<>();
                 }
+                currentList.add(get(parsed.get(i)));
 
-            } else {
-                setStringBuilderTestClassData(dataList.get(0), sb);
+                timeToTestClass.put(time, currentList);
             }
+            return timeToTestClass;
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private TreeMap<Long, List<TestClassData>> testClassDataMap() throws IOException, ParserConfigurationException, SAXException {
-        final List<Path> allResultsFolders = Files.walk(sureFireDirectory)
-                .filter(path -> path.toString().contains("TEST-"))
-                .collect(Collectors.toList());
-
-        TreeMap<Long, List<TestClassData>> timeToTestClass = new TreeMap<>();
-        for (final Path p : allResultsFolders) {
-            File f = p.toFile();
-            long time = f.lastModified();
-
-            List<TestClassData> currentList = timeToTestClass.get(time);
-            if (currentList == null) {
-                currentList = new ArrayList<>();
+    private static TestClassData get(final Future<TestClassData> parsed)
+            throws IOException, ParserConfigurationException, SAXException {
+        try {
+            return parsed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            } else if (cause instanceof ParserConfigurationException) {
+                throw (ParserConfigurationException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
-            currentList.add(parseXML(f));
-
-            timeToTestClass.put(time, currentList);
+            throw new IOException(cause);
         }
-        return timeToTestClass;
     }
 
     public List<TestClassData> testClassDataList() throws IOException, ParserConfigurationException, SAXException {
-        final List<String> classOrder = getClassOrder(mvnTestLog.toFile());
+        final Map<String, Integer> classOrder = getClassOrder(mvnTestLog.toFile());
 
         final TreeMap<Long, List<TestClassData>> timeToTestClass = testClassDataMap();
 
         final List<TestClassData> result = new ArrayList<>();
 
         for (Long time : timeToTestClass.keySet()) {
-            List<TestClassData> dataList = timeToTestClass.get(time);
-
-            if (dataList.size() > 1) {
-                TreeMap<Integer, List<TestClassData>> indexToTestClass = new TreeMap<>();
-
-                for (TestClassData data : dataList) {
-                    int index = classOrder.indexOf(data.className);
-                    List<TestClassData> currentList = indexToTestClass.get(index);
-                    if (currentList == null) {
-                        currentList = new ArrayList<>();
-                    }
-                    currentList.add(data);
-
-                    indexToTestClass.put(index, currentList);
-                }
-
-                for (Integer index : indexToTestClass.keySet()) {
-                    List<TestClassData> indexList = indexToTestClass.get(index);
-                    if (indexList.size() > 1) {
-                        result.addAll(indexList);
-                    } else {
-                        result.add(indexList.get(0));
-                    }
-                }
-
-            } else {
-                result.add(dataList.get(0));
-            }
+            result.addAll(inRunOrder(timeToTestClass.get(time), classOrder));
         }
 
         return result;
     }
 
+    /**
+     * Orders reports written within the same modification time: by the suite's start timestamp, then by where the
+     * class shows up in the log (classes missing from the log first), keeping the order found otherwise.
+     */
+    private static List<TestClassData> inRunOrder(final List<TestClassData> dataList,
+                                                  final Map<String, Integer> classOrder) {
+        if (dataList.size() == 1) {
+            return dataList;
+        }
+        final List<TestClassData> ordered = new ArrayList<>(dataList);
+        // Surefire timestamps are ISO-8601 local times of one fixed width, so they sort as strings
+        ordered.sort(Comparator.comparing((TestClassData data) -> data.timestamp)
+                .thenComparingInt(data -> classOrder.getOrDefault(data.className, -1)));
+        return ordered;
+    }
+
     private void setStringBuilderTestClassData(TestClassData data, StringBuilder sb) {
         sb.append("  ");
         sb.append(data.className);
@@ -141,70 +152,142 @@ public class GetMavenTestOrder extends StandardMain {
         sb.setLength(0);
     }
 
-    private List<String> getClassOrder(File f) {
-        List<String> classNames = new ArrayList<>();
-        try {
-            FileReader fileReader = new FileReader(f);
-            BufferedReader bufferedReader = new BufferedReader(fileReader);
+    /**
+     * @return The position of each class in the order the log shows it running ("Running a.b.C" lines), by the first
+     * time it shows up.
+     */
+    private Map<String, Integer> getClassOrder(File f) {
+        final Map<String, Integer> classOrder = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return getClassOrderByLines(f);
+            }
+            final MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final int limit = log.limit();
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int lineEnd = lineStart;
+                while (lineEnd < limit && log.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                final String className = runningClass(log, lineStart, lineEnd);
+                if (className != null) {
+                    classOrder.putIfAbsent(className, classOrder.size());
+                }
+                lineStart = lineEnd + 1;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return classOrder;
+    }
+
+    // The class name of a "Running <class>" line, which may be indented, or null for any other line
+    private static String runningClass(final ByteBuffer log, final int lineStart, final int lineEnd) {
+        int start = lineStart;
+        while (start < lineEnd && (log.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        if (lineEnd - start <= RUNNING.length) {
+            return null;
+        }
+        for (int i = 0; i < RUNNING.length; i++) {
+            if (log.get(start + i) != RUNNING[i]) {
+                return null;
+            }
+        }
+        start += RUNNING.length;
+        int end = start;
+        while (end < lineEnd && log.get(end) != ' ' && log.get(end) != '\r') {
+            end++;
+        }
+        if (end == start) {
+            return null;
+        }
+        final byte[] name = new byte[end - start];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = log.get(start + i);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    // For logs too large to map at once
+    private Map<String, Integer> getClassOrderByLines(File f) throws IOException {
+        final Map<String, Integer> classOrder = new HashMap<>();
+        try (BufferedReader bufferedReader = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
             String line;
             while ((line = bufferedReader.readLine()) != null) {
                 if (line.trim().startsWith("Running ")) {
                     String className = line.trim().split(" ")[1];
-                    classNames.add(className);
+                    classOrder.putIfAbsent(className, classOrder.size());
                 }
             }
-            fileReader.close();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        return classNames;
+        return classOrder;
     }
 
+    // Streams through the report, so captured output in system-out/system-err is never held in memory
     private TestClassData parseXML(File xmlFile) throws IOException, SAXException, ParserConfigurationException {
-        List<String> testNames = new ArrayList<>();
-        String className = "";
-        double testTime = 0;
-
-        DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        Document doc = dBuilder.parse(xmlFile);
-
-        Element rootElement = doc.getDocumentElement();
-        rootElement.normalize();
-
-        int errors = Integer.parseInt(rootElement.getAttribute("errors"));
-        int failures = Integer.parseInt(rootElement.getAttribute("failures"));
-
-	if (mvnTestMustPass){
-	    if (errors != 0 || failures != 0) {
-		// errors/failures found in the test suite from running mvn test.
-		// this test suite should not proceed to use detectors
-		throw new RuntimeException("Failures or errors occurred in mvn test");
-	    }
-	}
-
-        className = rootElement.getAttribute("name");
-        testTime = Double.parseDouble(rootElement.getAttribute("time"));
-
-        NodeList nList = doc.getElementsByTagName("testcase");
-        for (int temp = 0; temp < nList.getLength(); temp++) {
-            Node nNode = nList.item(temp);
-
-            if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-
-                Element eElement = (Element) nNode;
+        final List<String> testNames = new ArrayList<>();
+        final String[] className = {""};
+        final double[] testTime = {0};
+        final String[] timestamp = {""};
+
+        SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+        parser.parse(xmlFile, new DefaultHandler() {
+            private int depth = 0;
+            private String testName;
+            private int testDepth;
+            private boolean skipped;
+
+            @Override
+            public void startElement(final String uri, final String localName, final String qName,
+                                     final Attributes attributes) {
+                depth++;
+                if (depth == 1) {
+                    int errors = Integer.parseInt(attribute(attributes, "errors"));
+                    int failures = Integer.parseInt(attribute(attributes, "failures"));
+
+                    if (mvnTestMustPass) {
+                        if (errors != 0 || failures != 0) {
+                            // errors/failures found in the test suite from running mvn test.
+                            // this test suite should not proceed to use detectors
+                            throw new RuntimeException("Failures or errors occurred in mvn test");
+                        }
+                    }
 
-                if (eElement.getElementsByTagName("skipped").getLength() != 0) {
+                    className[0] = attribute(attributes, "name");
+                    testTime[0] = Double.parseDouble(attribute(attributes, "time"));
+                    timestamp[0] = attribute(attributes, "timestamp");
+                } else if (qName.equals("testcase") && testName == null) {
+                    testName = attribute(attributes, "name");
+                    testDepth = depth;
+                    skipped = false;
+                } else if (qName.equals("skipped") && testName != null) {
                     // this test case was marked as skip and therefore should not be ran by us
-                    // TODO
-                    continue;
+                    skipped = true;
                 }
+            }
 
-                String testName = eElement.getAttribute("name");
-                testNames.add(testName);
+            @Override
+            public void endElement(final String uri, final String localName, final String qName) {
+                if (testName != null && depth == testDepth) {
+                    if (!skipped) {
+                        testNames.add(testName);
+                    }
+                    testName = null;
+                }
+                depth--;
             }
-        }
+        });
+
+        return new TestClassData(className[0], testNames, testTime[0], timestamp[0]);
+    }
 
-        return new TestClassData(className, testNames, testTime);
+    // Missing attributes read as "", like Element.getAttribute
+    private static String attribute(final Attributes attributes, final String name) {
+        final String value = attributes.getValue(name);
+        return value == null ? "" : value;
     }
 
     private final Path mvnTestLog;
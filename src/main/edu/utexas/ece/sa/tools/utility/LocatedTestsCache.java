@@ -0,0 +1,112 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import edu.illinois.cs.testrunner.configuration.Configuration;
+import edu.utexas.ece.sa.tools.parser.ParserPathManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The tests located in a module, saved under the cache path so later runs skip TestLocator as long as the compiled
+ * test classes are unchanged. Lists are keyed by the test framework and a fingerprint of the test output directory
+ * (the path, size and modification time of every file in it); only the latest list per framework is kept.
+ */
+public class LocatedTestsCache {
+    public static final Path LOCATED_TESTS = Paths.get("located-tests");
+    private static final String LIST_EXTENSION = ".txt";
+
+    private final Path testClassesDir;
+    private String fingerprint;
+
+    public LocatedTestsCache(final Path testClassesDir) {
+        this.testClassesDir = testClassesDir;
+    }
+
+    public synchronized Optional<List<String>> load(final String framework) {
+        final Path listPath = listPath(framework);
+        if (listPath == null || !Files.exists(listPath)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new ArrayList<>(Files.readAllLines(listPath, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            System.out.println("Cannot read located tests " + listPath + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public synchronized void store(final String framework, final List<String> tests) {
+        final Path listPath = listPath(framework);
+        if (listPath == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(listPath.getParent());
+            try (DirectoryStream<Path> outdated = Files.newDirectoryStream(listPath.getParent(),
+                    framework + "-*" + LIST_EXTENSION)) {
+                for (final Path path : outdated) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            final Path tempPath = listPath.resolveSibling(listPath.getFileName() + ".tmp");
+            Files.write(tempPath, tests, StandardCharsets.UTF_8);
+            Files.move(tempPath, listPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Cannot save located tests " + listPath + ": " + e.getMessage());
+        }
+    }
+
+    private Path listPath(final String framework) {
+        if (!Configuration.config().getProperty("parser.cache.persist", true)) {
+            return null;
+        }
+        if (fingerprint == null) {
+            fingerprint = fingerprint(testClassesDir);
+        }
+        if (fingerprint == null) {
+            return null;
+        }
+        return ParserPathManager.path(LOCATED_TESTS).resolve(framework + "-" + fingerprint + LIST_EXTENSION);
+    }
+
+    private static String fingerprint(final Path dir) {
+        if (dir == null || !Files.isDirectory(dir)) {
+            return null;
+        }
+        final List<Path> files;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            return null;
+        }
+        if (files.isEmpty()) {
+            return null;
+        }
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(dir.toAbsolutePath().toString(), StandardCharsets.UTF_8);
+        try {
+            for (final Path file : files) {
+                final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                hasher.putString(dir.relativize(file).toString(), StandardCharsets.UTF_8)
+                        .putLong(attributes.size())
+                        .putLong(attributes.lastModifiedTime().toMillis());
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return hasher.hash().toString();
+    }
+}
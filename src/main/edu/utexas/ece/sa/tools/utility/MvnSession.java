@@ -0,0 +1,238 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import edu.illinois.cs.testrunner.configuration.Configuration;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.invoker.DefaultInvocationRequest;
+import org.apache.maven.shared.invoker.DefaultInvoker;
+import org.apache.maven.shared.invoker.InvocationOutputHandler;
+import org.apache.maven.shared.invoker.InvocationRequest;
+import org.apache.maven.shared.invoker.InvocationResult;
+import org.apache.maven.shared.invoker.Invoker;
+import org.apache.maven.shared.invoker.MavenInvocationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * One configured Maven invoker shared by every build the parser triggers.
+ *
+ * Builds never update snapshots and build only the requested module without its upstream modules. Offline mode is
+ * opt-in: set parser.mvn.offline to true once the local repository holds every plugin and dependency that install
+ * needs; it stays off by default because an offline build fails outright on anything missing. Only the last
+ * parser.mvn.outputLines lines of output are kept, for the error report. A module whose pom.xml and src tree have
+ * not changed since its last successful build is not built again.
+ */
+public class MvnSession {
+    private static MvnSession session;
+
+    public static synchronized MvnSession session() {
+        if (session == null) {
+            session = new MvnSession(
+                    Configuration.config().getProperty("parser.mvn.offline", false),
+                    Configuration.config().getProperty("parser.mvn.outputLines", 200));
+        }
+        return session;
+    }
+
+    private final Invoker invoker = new DefaultInvoker();
+    private final boolean offline;
+    private final int outputLines;
+    private final Map<String, String> builtFingerprints = new HashMap<>();
+    private final List<Invocation> invocations = new ArrayList<>();
+
+    private MvnSession(final boolean offline, final int outputLines) {
+        this.offline = offline;
+        this.outputLines = outputLines;
+    }
+
+    /**
+     * Runs mvn install with tests skipped.
+     * @param baseDir The reactor directory to build from, or null to build the project's own pom.
+     * @param moduleName The module to build within the reactor, if building from baseDir.
+     */
+    public synchronized boolean install(final MavenProject project, final File baseDir, final String moduleName,
+                                        final boolean suppressOutput) throws MavenInvocationException {
+        final String key = baseDir == null ? project.getFile().toString() : baseDir + ":" + moduleName;
+        final String fingerprint = fingerprint(baseDir == null ? project.getBasedir() : new File(baseDir, moduleName));
+        if (fingerprint != null && fingerprint.equals(builtFingerprints.get(key))) {
+            System.out.println("MVN INSTALL SKIPPED, NOTHING CHANGED IN " + key);
+            return true;
+        }
+
+        final InvocationRequest request = installRequest(project);
+        if (baseDir != null) {
+            request.setBaseDirectory(baseDir);
+            request.setProjects(Collections.singletonList(moduleName));
+            request.setAlsoMake(false);
+            request.setReactorFailureBehavior(InvocationRequest.ReactorFailureBehavior.FailNever);
+        }
+        final RingBufferHandler output = new RingBufferHandler(outputLines);
+        final RingBufferHandler error = new RingBufferHandler(outputLines);
+        request.setOutputHandler(output);
+        request.setErrorHandler(error);
+
+        final long startTime = System.currentTimeMillis();
+        final InvocationResult result;
+        try (Timeline.Span span = Timeline.start("mvn-install", key)) {
+            result = invoker.execute(request);
+        }
+        final Invocation invocation = new Invocation(key, result.getExitCode(),
+                new OperationTime(startTime, System.currentTimeMillis()));
+        invocations.add(invocation);
+        System.out.println("MVN INSTALL OF " + key + " TOOK " + invocation.time.elapsedSeconds() + " SECONDS");
+
+        if (result.getExitCode() != 0) {
+            builtFingerprints.remove(key);
+            // Print out the contents of the output/error streamed out during evocation, if not suppressed
+            if (!suppressOutput) {
+                System.out.println(output.contents());
+                System.out.println(error.contents());
+            }
+
+            if (result.getExecutionException() == null) {
+                throw new RuntimeException("Compilation failed with exit code " + result.getExitCode() + " for an unknown reason");
+            } else {
+                throw new RuntimeException(result.getExecutionException());
+            }
+        }
+        if (fingerprint != null) {
+            builtFingerprints.put(key, fingerprint);
+        }
+        return true;
+    }
+
+    private InvocationRequest installRequest(final MavenProject project) {
+        final InvocationRequest request = new DefaultInvocationRequest();
+        request.setGoals(Arrays.asList("install"));
+        request.setPomFile(project.getFile());
+        request.setProperties(new Properties());
+        request.getProperties().setProperty("skipTests", "true");
+        request.getProperties().setProperty("rat.skip", "true");
+        request.getProperties().setProperty("dependency-check.skip", "true");
+        request.getProperties().setProperty("enforcer.skip", "true");
+        request.getProperties().setProperty("checkstyle.skip", "true");
+        request.getProperties().setProperty("maven.javadoc.skip", "true");
+        request.getProperties().setProperty("maven.source.skip", "true");
+        request.getProperties().setProperty("gpg.skip", "true");
+        request.getProperties().setProperty("findbugs.skip", "true");
+        request.setOffline(offline);
+        request.setUpdateSnapshots(false);
+        return request;
+    }
+
+    // Paths, sizes and modification times of the module's pom.xml and of the files under its src directory, the only
+    // inputs of the build that the parser changes; walking the whole module would cost as much as it saves
+    private static String fingerprint(final File moduleDir) {
+        if (moduleDir == null || !moduleDir.isDirectory()) {
+            return null;
+        }
+        final Hasher hasher = Hashing.sha256().newHasher();
+        try {
+            final Path pom = moduleDir.toPath().resolve("pom.xml");
+            if (Files.exists(pom)) {
+                final BasicFileAttributes attrs = Files.readAttributes(pom, BasicFileAttributes.class);
+                hasher.putString(pom.toString(), StandardCharsets.UTF_8)
+                        .putLong(attrs.size())
+                        .putLong(attrs.lastModifiedTime().toMillis());
+            }
+            final Path src = moduleDir.toPath().resolve("src");
+            if (Files.isDirectory(src)) {
+                Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                        // Hidden directories hold caches, such as the parser's own
+                        if (!dir.equals(src) && dir.getFileName().toString().startsWith(".")) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                        hasher.putString(file.toString(), StandardCharsets.UTF_8)
+                                .putLong(attrs.size())
+                                .putLong(attrs.lastModifiedTime().toMillis());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return hasher.hash().toString();
+    }
+
+    public synchronized List<Invocation> invocations() {
+        return new ArrayList<>(invocations);
+    }
+
+    public static class Invocation {
+        private final String target;
+        private final int exitCode;
+        private final OperationTime time;
+
+        private Invocation(final String target, final int exitCode, final OperationTime time) {
+            this.target = target;
+            this.exitCode = exitCode;
+            this.time = time;
+        }
+
+        public String target() {
+            return target;
+        }
+
+        public int exitCode() {
+            return exitCode;
+        }
+
+        public OperationTime time() {
+            return time;
+        }
+    }
+
+    // Keeps only the last lines of a build's output
+    private static class RingBufferHandler implements InvocationOutputHandler {
+        private final Deque<String> lines = new ArrayDeque<>();
+        private final int capacity;
+        private int dropped = 0;
+
+        private RingBufferHandler(final int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        @Override
+        public synchronized void consumeLine(final String line) {
+            if (lines.size() == capacity) {
+                lines.removeFirst();
+                dropped++;
+            }
+            lines.addLast(line);
+        }
+
+        synchronized String contents() {
+            final StringBuilder builder = new StringBuilder();
+            if (dropped > 0) {
+                builder.append("[... ").append(dropped).append(" earlier lines dropped ...]").append(System.lineSeparator());
+            }
+            lines.forEach(line -> builder.append(line).append(System.lineSeparator()));
+            return builder.toString();
+        }
+    }
+}
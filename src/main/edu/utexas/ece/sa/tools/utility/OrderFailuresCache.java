@@ -0,0 +1,513 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import edu.illinois.cs.testrunner.configuration.Configuration;
+import edu.utexas.ece.sa.tools.parser.ParserPathManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Failed tests observed for each executed order, persisted under the cache path so that later runs on
+ * unchanged test classes do not execute the same order again.
+ *
+ * Entries are grouped into segments keyed by a hash of the compiled bytes of every class in the order and of the
+ * other test classes (superclasses and helpers the order may use), along with a stamp of the main classes. Each
+ * segment appends to its own log, which is rewritten without duplicates once it grows to twice the number of
+ * distinct orders. In memory, orders and failed tests are kept as {@link TestIds} in a least recently used map of
+ * at most parser.cache.orderMegabytes (64 by default); an evicted order is read back from its log when it is
+ * looked up again.
+ */
+public class OrderFailuresCache {
+    public static final Path ORDER_CACHE = Paths.get("order-cache");
+    private static final String LOG_EXTENSION = ".log";
+    private static final int MIN_COMPACTION_LINES = 64;
+    private static final int EVICTED_FILTER_SIZE = 1 << 16;
+    private static final long ENTRY_BYTES = 96;
+    private static final Pattern GENERATED_CLASS = Pattern.compile("(.*)New\\d+(\\$.*)?\\.class");
+
+    private final Map<String, Segment> segments = new ConcurrentHashMap<>();
+    private final Map<Path, ClassStamp> classStamps = new ConcurrentHashMap<>();
+    // Hash of the compiled bytes of each test class, until the test classes are compiled again
+    private final Map<String, byte[]> classHashes = new ConcurrentHashMap<>();
+    private volatile byte[] mainOutputStamp;
+    private volatile byte[] sharedTestClassesHash;
+    private final LinkedHashMap<Key, int[]> results = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long bytes = 0;
+    private long evictions = 0;
+
+    public OrderFailuresCache() {
+        this(Configuration.config().getProperty("parser.cache.orderMegabytes", 64) * 1024L * 1024L);
+    }
+
+    public OrderFailuresCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public Set<String> get(final List<String> order) {
+        return get(PackedOrder.of(order));
+    }
+
+    public Set<String> get(final PackedOrder order) {
+        final Segment segment = segment(order);
+        int[] failedTests = lookup(segment, order);
+        if (failedTests == null && segment.mayHaveEvicted(order)) {
+            failedTests = segment.reload(order);
+            if (failedTests != null) {
+                remember(segment, order, failedTests);
+            }
+        }
+        return failedTests == null ? null : names(failedTests);
+    }
+
+    public boolean containsKey(final List<String> order) {
+        return get(order) != null;
+    }
+
+    public boolean containsKey(final PackedOrder order) {
+        return get(order) != null;
+    }
+
+    public void put(final List<String> order, final Set<String> failedTests) {
+        put(PackedOrder.of(order), failedTests);
+    }
+
+    public void put(final PackedOrder order, final Set<String> failedTests) {
+        final Segment segment = segment(order);
+        final int[] failedIds = ids(failedTests);
+        // An evicted order may already be logged; compaction recounts the distinct orders exactly
+        final boolean known = lookup(segment, order) != null || segment.mayHaveEvicted(order);
+        remember(segment, order, failedIds);
+        segment.log(order, failedIds, !known);
+    }
+
+    /**
+     * @return The number of orders held in memory, their estimated size and how many were evicted so far.
+     */
+    public String summary() {
+        synchronized (results) {
+            return results.size() + " orders, " + (bytes / 1024) + " KB, " + evictions + " evicted";
+        }
+    }
+
+    private int[] lookup(final Segment segment, final PackedOrder order) {
+        synchronized (results) {
+            return results.get(new Key(segment, order));
+        }
+    }
+
+    private void remember(final Segment segment, final PackedOrder order, final int[] failedTests) {
+        synchronized (results) {
+            final Key key = new Key(segment, order);
+            final int[] previous = results.put(key, failedTests);
+            bytes += weight(key, failedTests) - (previous == null ? 0 : weight(key, previous));
+            final Iterator<Map.Entry<Key, int[]>> eldest = results.entrySet().iterator();
+            while (bytes > maxBytes && results.size() > 1) {
+                final Map.Entry<Key, int[]> entry = eldest.next();
+                bytes -= weight(entry.getKey(), entry.getValue());
+                entry.getKey().segment.evicted(entry.getKey().order);
+                eldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private static long weight(final Key key, final int[] failedTests) {
+        return ENTRY_BYTES + key.order.bytes() + 16 + 4L * failedTests.length;
+    }
+
+    private static int[] ids(final Collection<String> tests) {
+        final int[] ids = new int[tests.size()];
+        int i = 0;
+        for (final String test : tests) {
+            ids[i++] = TestIds.id(test);
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static Set<String> names(final int[] ids) {
+        final Set<String> names = new HashSet<>();
+        for (final int id : ids) {
+            names.add(TestIds.name(id));
+        }
+        return names;
+    }
+
+    /**
+     * Called after the test (or main) classes were compiled again, so the fingerprints are computed anew.
+     */
+    public void classesChanged() {
+        classHashes.clear();
+        mainOutputStamp = null;
+        sharedTestClassesHash = null;
+    }
+
+    private boolean persistent() {
+        return Configuration.config().getProperty("parser.cache.persist", true);
+    }
+
+    private Segment segment(final PackedOrder order) {
+        return segments.computeIfAbsent(fingerprint(order), Segment::new);
+    }
+
+    /**
+     * @return A hash of the compiled bytes of the classes in the order (and their nested classes), of the other
+     * test classes and of the stamp of the main classes; no file is read again until {@link #classesChanged()}.
+     */
+    private String fingerprint(final PackedOrder order) {
+        final Set<String> classNames = new TreeSet<>();
+        for (int i = 0; i < order.size(); i++) {
+            classNames.add(className(TestIds.name(order.id(i))));
+        }
+        final Hasher hasher = Hashing.sha256().newHasher();
+        for (final String className : classNames) {
+            hasher.putString(className, StandardCharsets.UTF_8);
+            hasher.putBytes(classHashes.computeIfAbsent(className, this::classHash));
+        }
+        hasher.putBytes(sharedTestClassesHash());
+        hasher.putBytes(mainOutputStamp());
+        return hasher.hash().toString();
+    }
+
+    // The compiled bytes of every test class but those generated by splits (X.class next to XNew<d>.class), which
+    // only their own orders use and which change whenever another class is split
+    private byte[] sharedTestClassesHash() {
+        byte[] hash = sharedTestClassesHash;
+        if (hash == null) {
+            final Hasher hasher = Hashing.sha256().newHasher();
+            final Path testOutput = ParserPathManager.testOutputPath();
+            if (Files.isDirectory(testOutput)) {
+                try (Stream<Path> paths = Files.walk(testOutput)) {
+                    for (final Path path : paths.filter(OrderFailuresCache::isSharedTestClass).sorted()
+                            .collect(Collectors.toList())) {
+                        hasher.putString(testOutput.relativize(path).toString(), StandardCharsets.UTF_8)
+                                .putBytes(classStamp(path).hash);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            hash = hasher.hash().asBytes();
+            sharedTestClassesHash = hash;
+        }
+        return hash;
+    }
+
+    private static boolean isSharedTestClass(final Path path) {
+        final String fileName = path.getFileName().toString();
+        if (!fileName.endsWith(".class") || !Files.isRegularFile(path)) {
+            return false;
+        }
+        final Matcher generated = GENERATED_CLASS.matcher(fileName);
+        return !generated.matches() || !Files.exists(path.resolveSibling(generated.group(1) + ".class"));
+    }
+
+    private byte[] classHash(final String className) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        for (final Path classFile : classFiles(className)) {
+            hasher.putBytes(classStamp(classFile).hash);
+        }
+        return hasher.hash().asBytes();
+    }
+
+    // The path, size and modification time of every file in the main output directory
+    private byte[] mainOutputStamp() {
+        byte[] stamp = mainOutputStamp;
+        if (stamp == null) {
+            final Hasher hasher = Hashing.sha256().newHasher();
+            final Path mainOutput = ParserPathManager.mainOutputPath();
+            if (Files.isDirectory(mainOutput)) {
+                try (Stream<Path> paths = Files.walk(mainOutput)) {
+                    for (final Path path : paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                        hasher.putString(mainOutput.relativize(path).toString(), StandardCharsets.UTF_8)
+                                .putLong(attributes.size())
+                                .putLong(attributes.lastModifiedTime().toMillis());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            stamp = hasher.hash().asBytes();
+            mainOutputStamp = stamp;
+        }
+        return stamp;
+    }
+
+    private static String className(final String test) {
+        if (test.contains("#")) {
+            return test.substring(0, test.indexOf('#'));
+        }
+        return test.substring(0, test.lastIndexOf('.'));
+    }
+
+    private static List<Path> classFiles(final String className) {
+        return ParserPathManager.withNestedClassFiles(ParserPathManager.compiledClassPath(className));
+    }
+
+    // Rehash a class file only when its size or modification time changed
+    private ClassStamp classStamp(final Path classFile) {
+        try {
+            final long size = Files.size(classFile);
+            final long modified = Files.getLastModifiedTime(classFile).toMillis();
+            final ClassStamp stamp = classStamps.get(classFile);
+            if (stamp != null && stamp.size == size && stamp.modified == modified) {
+                return stamp;
+            }
+            final ClassStamp newStamp = new ClassStamp(size, modified,
+                    Hashing.sha256().hashBytes(Files.readAllBytes(classFile)).asBytes());
+            classStamps.put(classFile, newStamp);
+            return newStamp;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class ClassStamp {
+        private final long size;
+        private final long modified;
+        private final byte[] hash;
+
+        private ClassStamp(final long size, final long modified, final byte[] hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+
+    private static final class Key {
+        private final Segment segment;
+        private final PackedOrder order;
+
+        private Key(final Segment segment, final PackedOrder order) {
+            this.segment = segment;
+            this.order = order;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return segment == key.segment && order.equals(key.order);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(segment) + order.hashCode();
+        }
+    }
+
+    private final class Segment {
+        private final Path logPath;
+        private int loggedLines = 0;
+        private int distinctOrders = 0;
+        // Hashes of the orders evicted from memory, which only the log still has
+        private volatile BloomFilter<Long> evicted;
+        private final Object evictedLock = new Object();
+
+        private Segment(final String fingerprint) {
+            this.logPath = persistent() ? ParserPathManager.path(ORDER_CACHE).resolve(fingerprint + LOG_EXTENSION) : null;
+            load();
+        }
+
+        private void load() {
+            if (logPath == null || !Files.exists(logPath)) {
+                return;
+            }
+            final Set<Long> loaded = new HashSet<>();
+            try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int tab = line.indexOf('\t');
+                    // A line without a tab was cut short by an interrupted run
+                    if (tab <= 0) {
+                        continue;
+                    }
+                    final PackedOrder order = PackedOrder.of(split(line.substring(0, tab)));
+                    remember(this, order, ids(split(line.substring(tab + 1))));
+                    loaded.add(order.hash());
+                    loggedLines++;
+                }
+                distinctOrders = loaded.size();
+                System.out.println("LOADED " + distinctOrders + " CACHED ORDERS FROM " + logPath);
+                if (needsCompaction()) {
+                    compact();
+                }
+            } catch (IOException e) {
+                System.out.println("Cannot read order cache " + logPath + ": " + e.getMessage());
+            }
+        }
+
+        private synchronized void log(final PackedOrder order, final int[] failedTests, final boolean added) {
+            if (added) {
+                distinctOrders++;
+            }
+            if (logPath == null) {
+                return;
+            }
+            try {
+                Files.createDirectories(logPath.getParent());
+                Files.write(logPath, Collections.singletonList(line(order, failedTests)), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                loggedLines++;
+                if (needsCompaction()) {
+                    compact();
+                }
+            } catch (IOException e) {
+                System.out.println("Cannot append to order cache " + logPath + ": " + e.getMessage());
+            }
+        }
+
+        private void evicted(final PackedOrder order) {
+            if (logPath == null) {
+                return;
+            }
+            synchronized (evictedLock) {
+                if (evicted == null) {
+                    evicted = BloomFilter.create(Funnels.longFunnel(), EVICTED_FILTER_SIZE, 0.01);
+                }
+                evicted.put(order.hash());
+            }
+        }
+
+        private boolean mayHaveEvicted(final PackedOrder order) {
+            final BloomFilter<Long> filter = evicted;
+            return filter != null && filter.mightContain(order.hash());
+        }
+
+        // The failed tests of the last line of the order in the log, if there is one
+        private synchronized int[] reload(final PackedOrder order) {
+            final String prefix = join(order.toList()) + "\t";
+            String found = null;
+            try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(prefix)) {
+                        found = line.substring(prefix.length());
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Cannot read order cache " + logPath + ": " + e.getMessage());
+            }
+            return found == null ? null : ids(split(found));
+        }
+
+        private boolean needsCompaction() {
+            return loggedLines > MIN_COMPACTION_LINES && loggedLines > 2 * distinctOrders;
+        }
+
+        // Orders evicted from memory are only in the log, so the log itself is deduplicated, keeping the last line
+        // of every order
+        private synchronized void compact() throws IOException {
+            final Map<Long, Integer> lastLines = new HashMap<>();
+            int lineNumber = 0;
+            try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        lastLines.put(orderHash(line, tab), lineNumber);
+                    }
+                    lineNumber++;
+                }
+            }
+            final Path tempPath = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+            lineNumber = 0;
+            try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8);
+                 BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int tab = line.indexOf('\t');
+                    if (tab > 0 && lastLines.get(orderHash(line, tab)) == lineNumber) {
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                    lineNumber++;
+                }
+            }
+            Files.move(tempPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            loggedLines = lastLines.size();
+            distinctOrders = lastLines.size();
+        }
+    }
+
+    private static long orderHash(final String line, final int tab) {
+        return Hashing.murmur3_128().hashString(line.substring(0, tab), StandardCharsets.UTF_8).asLong();
+    }
+
+    private static String line(final PackedOrder order, final int[] failedTests) {
+        final Set<String> failed = new TreeSet<>();
+        for (final int id : failedTests) {
+            failed.add(TestIds.name(id));
+        }
+        return join(order.toList()) + "\t" + join(failed);
+    }
+
+    // Test names joined by ';', with '\', ';', tabs and line breaks in them escaped by a backslash
+    private static String join(final Collection<String> tests) {
+        final StringBuilder sb = new StringBuilder();
+        boolean first = true;
+        for (final String test : tests) {
+            if (!first) {
+                sb.append(';');
+            }
+            first = false;
+            for (int i = 0; i < test.length(); i++) {
+                final char c = test.charAt(i);
+                switch (c) {
+                    case '\\': sb.append("\\\\"); break;
+                    case ';': sb.append("\\;"); break;
+                    case '\t': sb.append("\\t"); break;
+                    case '\n': sb.append("\\n"); break;
+                    case '\r': sb.append("\\r"); break;
+                    default: sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static List<String> split(final String joined) {
+        final List<String> tests = new ArrayList<>();
+        if (joined.isEmpty()) {
+            return tests;
+        }
+        final StringBuilder test = new StringBuilder();
+        for (int i = 0; i < joined.length(); i++) {
+            final char c = joined.charAt(i);
+            if (c == '\\' && i + 1 < joined.length()) {
+                final char escaped = joined.charAt(++i);
+                test.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else if (c == ';') {
+                tests.add(test.toString());
+                test.setLength(0);
+            } else {
+                test.append(c);
+            }
+        }
+        tests.add(test.toString());
+        return tests;
+    }
+}
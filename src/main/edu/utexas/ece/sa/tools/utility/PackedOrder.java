@@ -0,0 +1,159 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable test order stored as the {@link TestIds} of its tests, two bytes per test while every ID fits in
+ * a short and four bytes otherwise.
+ *
+ * Orders are hashed Zobrist-style, as the XOR of a 64-bit key per (position, test) pair, so an order derived by
+ * moving tests only rehashes the positions that changed. Equal hashes are confirmed by comparing the IDs.
+ */
+public final class PackedOrder {
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final short[] shortIds;
+    private final int[] intIds;
+    private final int size;
+    private final long hash;
+
+    public static PackedOrder of(final List<String> order) {
+        final int[] ids = new int[order.size()];
+        long hash = 0;
+        int position = 0;
+        for (final String test : order) {
+            ids[position] = TestIds.id(test);
+            hash ^= key(position, ids[position]);
+            position++;
+        }
+        return new PackedOrder(ids, hash);
+    }
+
+    private PackedOrder(final int[] ids, final long hash) {
+        this.size = ids.length;
+        this.hash = hash;
+        int max = 0;
+        for (final int id : ids) {
+            max = Math.max(max, id);
+        }
+        if (max <= 0xFFFF) {
+            this.shortIds = new short[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                shortIds[i] = (short) ids[i];
+            }
+            this.intIds = null;
+        } else {
+            this.shortIds = null;
+            this.intIds = ids;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int id(final int position) {
+        return shortIds != null ? shortIds[position] & 0xFFFF : intIds[position];
+    }
+
+    /**
+     * @return The position of the test with the given ID, or -1 if it is not in the order.
+     */
+    public int indexOf(final int id) {
+        for (int i = 0; i < size; i++) {
+            if (id(i) == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The order with the test at the given position moved to the front and the tests before it shifted
+     * back by one.
+     */
+    public PackedOrder moveToFront(final int position) {
+        final int[] ids = ids();
+        long newHash = hash;
+        for (int i = 0; i <= position; i++) {
+            newHash ^= key(i, ids[i]);
+        }
+        final int moved = ids[position];
+        System.arraycopy(ids, 0, ids, 1, position);
+        ids[0] = moved;
+        for (int i = 0; i <= position; i++) {
+            newHash ^= key(i, ids[i]);
+        }
+        return new PackedOrder(ids, newHash);
+    }
+
+    public int[] ids() {
+        final int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = id(i);
+        }
+        return ids;
+    }
+
+    public List<String> toList() {
+        final List<String> order = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            order.add(TestIds.name(id(i)));
+        }
+        return order;
+    }
+
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * @return A rough estimate of the heap taken by the order.
+     */
+    public long bytes() {
+        return 40 + 16 + (shortIds != null ? 2L : 4L) * size;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PackedOrder)) {
+            return false;
+        }
+        final PackedOrder other = (PackedOrder) o;
+        if (hash != other.hash || size != other.size) {
+            return false;
+        }
+        if (shortIds != null && other.shortIds != null) {
+            return Arrays.equals(shortIds, other.shortIds);
+        }
+        for (int i = 0; i < size; i++) {
+            if (id(i) != other.id(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    // The Zobrist key of a test at a position, mixed on demand (SplitMix64) instead of kept in a table
+    private static long key(final int position, final int id) {
+        long z = (((long) position << 32) | (id & 0xFFFFFFFFL)) + SEED;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
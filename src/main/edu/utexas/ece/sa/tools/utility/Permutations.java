@@ -0,0 +1,157 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * All orderings of a list, produced lazily in lexicographic order of the element positions, so the first
+ * permutation is the list itself. The spliterator splits by permutation index, so disjoint ranges can be
+ * consumed in parallel, and only the permutations actually consumed are ever built.
+ */
+public class Permutations<T> implements Iterable<List<T>> {
+    // 20! is the largest factorial that fits in a long
+    public static final int MAX_ELEMENTS = 20;
+
+    private final List<T> elements;
+    private final long size;
+
+    public Permutations(final List<T> elements) {
+        Preconditions.checkArgument(elements.size() <= MAX_ELEMENTS,
+                "Cannot enumerate permutations of more than %s elements (got %s)", MAX_ELEMENTS, elements.size());
+        this.elements = new ArrayList<>(elements);
+        this.size = factorial(elements.size());
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<List<T>> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    @Override
+    public Spliterator<List<T>> spliterator() {
+        return new PermutationSpliterator(0, size);
+    }
+
+    public Stream<List<T>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    private static long factorial(final int n) {
+        long result = 1;
+        for (int i = 2; i <= n; i++) {
+            result *= i;
+        }
+        return result;
+    }
+
+    /**
+     * @return The element positions of the permutation with the given lexicographic index.
+     */
+    private int[] unrank(long rank) {
+        final int n = elements.size();
+        final List<Integer> remaining = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            remaining.add(i);
+        }
+        final int[] positions = new int[n];
+        for (int i = 0; i < n; i++) {
+            final long block = factorial(n - 1 - i);
+            positions[i] = remaining.remove((int) (rank / block));
+            rank %= block;
+        }
+        return positions;
+    }
+
+    /**
+     * Rearranges the positions into the lexicographically next permutation.
+     */
+    private static void nextPermutation(final int[] positions) {
+        int i = positions.length - 2;
+        while (i >= 0 && positions[i] > positions[i + 1]) {
+            i--;
+        }
+        if (i < 0) {
+            return;
+        }
+        int j = positions.length - 1;
+        while (positions[j] < positions[i]) {
+            j--;
+        }
+        swap(positions, i, j);
+        for (int lo = i + 1, hi = positions.length - 1; lo < hi; lo++, hi--) {
+            swap(positions, lo, hi);
+        }
+    }
+
+    private static void swap(final int[] positions, final int i, final int j) {
+        final int tmp = positions[i];
+        positions[i] = positions[j];
+        positions[j] = tmp;
+    }
+
+    private final class PermutationSpliterator implements Spliterator<List<T>> {
+        private long index;
+        private final long end;
+        // Positions of the permutation at index - 1, or null if the next one has to be unranked
+        private int[] current = null;
+
+        private PermutationSpliterator(final long index, final long end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super List<T>> action) {
+            if (index >= end) {
+                return false;
+            }
+            if (current == null) {
+                current = unrank(index);
+            } else {
+                nextPermutation(current);
+            }
+            index++;
+
+            final List<T> permutation = new ArrayList<>(current.length);
+            for (final int position : current) {
+                permutation.add(elements.get(position));
+            }
+            action.accept(permutation);
+            return true;
+        }
+
+        @Override
+        public Spliterator<List<T>> trySplit() {
+            if (end - index < 2) {
+                return null;
+            }
+            final long mid = index + (end - index) / 2;
+            final Spliterator<List<T>> prefix = new PermutationSpliterator(index, mid);
+            index = mid;
+            current = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Finds, by delta debugging (ddmin), the fewest tests a failing test depends on: the polluters that make it fail
+ * when they run before it, or, for a test that fails on its own, the setters it needs to run first.
+ *
+ * A test's outcome is assumed to depend only on the tests that ran before it. Every run therefore also answers
+ * for each prefix of the order, and those answers are reused by later queries, including those for other tests.
+ */
+public class PolluterMinimizer {
+    public enum Kind {
+        // Fails after the dependencies and passes without them
+        POLLUTED,
+        // Fails on its own and passes after the dependencies
+        NEEDS_SETTER,
+        // Fails even after every other test, or passes on its own and after the tests that preceded it
+        UNKNOWN
+    }
+
+    public static final class Dependencies {
+        public final Kind kind;
+        public final List<String> tests;
+
+        public Dependencies(final Kind kind, final List<String> tests) {
+            this.kind = kind;
+            this.tests = tests;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + tests;
+        }
+    }
+
+    private final Function<List<String>, Set<String>> runOrder;
+    private final Map<PackedOrder, Boolean> prefixFailures = new HashMap<>();
+    private int runs = 0;
+
+    /**
+     * @param runOrder Runs one order and returns the tests that failed in it.
+     */
+    public PolluterMinimizer(final Function<List<String>, Set<String>> runOrder) {
+        this.runOrder = runOrder;
+    }
+
+    /**
+     * Records the outcome of an order that already ran, so its prefixes are not run again.
+     */
+    public void observe(final List<String> order, final Set<String> failedTests) {
+        for (int i = 0; i < order.size(); i++) {
+            prefixFailures.put(PackedOrder.of(order.subList(0, i + 1)), failedTests.contains(order.get(i)));
+        }
+    }
+
+    /**
+     * @param order An order in which the test failed.
+     * @param tests Every test that may be a setter, in the order they would run.
+     */
+    public Dependencies minimize(final String test, final List<String> order, final Collection<String> tests) {
+        final int position = order.indexOf(test);
+        final List<String> preceding = new ArrayList<>(order.subList(0, Math.max(0, position)));
+        if (!fails(Collections.emptyList(), test)) {
+            if (preceding.isEmpty() || !fails(preceding, test)) {
+                return new Dependencies(Kind.UNKNOWN, Collections.emptyList());
+            }
+            return new Dependencies(Kind.POLLUTED, ddmin(preceding, subset -> fails(subset, test)));
+        }
+        final List<String> others = new ArrayList<>(tests);
+        others.remove(test);
+        if (others.isEmpty() || fails(others, test)) {
+            return new Dependencies(Kind.UNKNOWN, Collections.emptyList());
+        }
+        return new Dependencies(Kind.NEEDS_SETTER, ddmin(others, subset -> !fails(subset, test)));
+    }
+
+    public int runs() {
+        return runs;
+    }
+
+    // Whether the test fails when run right after the given tests
+    private boolean fails(final List<String> before, final String test) {
+        final List<String> order = new ArrayList<>(before);
+        order.add(test);
+        final PackedOrder packed = PackedOrder.of(order);
+        final Boolean known = prefixFailures.get(packed);
+        if (known != null) {
+            return known;
+        }
+        runs++;
+        final Set<String> failedTests = runOrder.apply(order);
+        observe(order, failedTests == null ? Collections.emptySet() : failedTests);
+        return prefixFailures.get(packed);
+    }
+
+    /**
+     * Zeller's ddmin: shrinks the tests, keeping their relative order, to a subset that still has the property and
+     * that loses it when any single test is removed.
+     */
+    private static List<String> ddmin(List<String> tests, final Function<List<String>, Boolean> property) {
+        int granularity = 2;
+        while (tests.size() >= 2) {
+            final List<List<String>> chunks = chunks(tests, granularity);
+            boolean reduced = false;
+            for (final List<String> chunk : chunks) {
+                if (property.apply(chunk)) {
+                    tests = chunk;
+                    granularity = 2;
+                    reduced = true;
+                    break;
+                }
+            }
+            if (!reduced && granularity > 2) {
+                for (final List<String> chunk : chunks) {
+                    final List<String> complement = new ArrayList<>(tests);
+                    complement.removeAll(chunk);
+                    if (property.apply(complement)) {
+                        tests = complement;
+                        granularity = Math.max(granularity - 1, 2);
+                        reduced = true;
+                        break;
+                    }
+                }
+            }
+            if (!reduced) {
+                if (granularity >= tests.size()) {
+                    break;
+                }
+                granularity = Math.min(granularity * 2, tests.size());
+            }
+        }
+        return tests;
+    }
+
+    private static List<List<String>> chunks(final List<String> tests, final int count) {
+        final List<List<String>> chunks = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            final int end = start + (tests.size() - start) / (count - i);
+            chunks.add(new ArrayList<>(tests.subList(start, end)));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Picks the tests that can move to a new class together: a test joins unless one of its polluters or a test it
+     * pollutes already has. The tests left out wait for a later class.
+     */
+    public static List<String> nextGroup(final List<String> pending, final Map<String, Dependencies> dependencies) {
+        final List<String> group = new ArrayList<>();
+        for (final String test : pending) {
+            boolean conflicts = false;
+            for (final String member : group) {
+                if (pollutes(member, test, dependencies) || pollutes(test, member, dependencies)) {
+                    conflicts = true;
+                    break;
+                }
+            }
+            if (!conflicts) {
+                group.add(test);
+            }
+        }
+        return group;
+    }
+
+    private static boolean pollutes(final String polluter, final String victim,
+                                    final Map<String, Dependencies> dependencies) {
+        final Dependencies victimDependencies = dependencies.get(victim);
+        return victimDependencies != null && victimDependencies.kind == Kind.POLLUTED
+                && victimDependencies.tests.contains(polluter);
+    }
+}
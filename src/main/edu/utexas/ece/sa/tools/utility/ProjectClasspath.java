@@ -0,0 +1,90 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The test classpath of a project, resolved once per execution, and one class loader over it shared by every
+ * caller. The loader keeps its jars open between uses; it is only replaced once the compiled test classes change,
+ * and the replaced loaders are closed along with the model.
+ */
+public class ProjectClasspath implements AutoCloseable {
+    private final MavenProject project;
+    private String classpath;
+    private URL[] urls;
+    private URLClassLoader classLoader;
+    private final List<URLClassLoader> staleLoaders = new ArrayList<>();
+
+    public ProjectClasspath(final MavenProject project) {
+        this.project = project;
+    }
+
+    /**
+     * @return The compile, runtime and test classpath elements, in that order and without duplicates.
+     */
+    public synchronized String classpath() throws DependencyResolutionRequiredException {
+        if (classpath == null) {
+            final Set<String> elements = new LinkedHashSet<>(project.getCompileClasspathElements());
+            elements.addAll(project.getRuntimeClasspathElements());
+            elements.addAll(project.getTestClasspathElements());
+            classpath = String.join(File.pathSeparator, elements);
+        }
+        return classpath;
+    }
+
+    public synchronized URLClassLoader classLoader() throws DependencyResolutionRequiredException {
+        if (classLoader == null) {
+            classLoader = URLClassLoader.newInstance(urls());
+        }
+        return classLoader;
+    }
+
+    /**
+     * Called after the test classes were compiled again, so the next loader sees the new classes. The current loader
+     * may still be in use, so it is closed with the model rather than right away.
+     */
+    public synchronized void testOutputChanged() {
+        if (classLoader != null) {
+            staleLoaders.add(classLoader);
+            classLoader = null;
+        }
+    }
+
+    private URL[] urls() throws DependencyResolutionRequiredException {
+        if (urls == null) {
+            final List<URL> urlList = new ArrayList<>();
+            for (final String cp : classpath().split(File.pathSeparator)) {
+                try {
+                    urlList.add(new File(cp).toURI().toURL());
+                } catch (MalformedURLException mue) {
+                    System.out.println("Classpath element " + cp + " is malformed!");
+                }
+            }
+            urls = urlList.toArray(new URL[0]);
+        }
+        return urls;
+    }
+
+    @Override
+    public synchronized void close() {
+        testOutputChanged();
+        for (final URLClassLoader loader : staleLoaders) {
+            try {
+                loader.close();
+            } catch (IOException ignored) {
+                // Only the jar handles are left to release
+            }
+        }
+        staleLoaders.clear();
+    }
+}
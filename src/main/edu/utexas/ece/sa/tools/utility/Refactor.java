@@ -16,34 +16,31 @@ import com.github.javaparser.ast.visitor.VoidVisitor;
 import edu.illinois.cs.testrunner.runner.Runner;
 import edu.utexas.ece.sa.tools.parser.JavaFile;
 import edu.utexas.ece.sa.tools.parser.ParserPathManager;
-import org.apache.commons.io.FilenameUtils;
+import edu.utexas.ece.sa.tools.parser.TestSourceIndex;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.project.MavenProject;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.URLClassLoader;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.stream.Stream;
 
 public class Refactor {
-    private static MavenProject mavenProject;
+    private final MavenProject mavenProject;
 
-    private static String classPath;
+    private final String classPath;
 
-    private static URLClassLoader projectClassLoader;
+    private final URLClassLoader projectClassLoader;
 
-    private static Runner runner;
+    private final Runner runner;
 
     public Refactor(MavenProject mavenProject, String classPath, URLClassLoader projectClassLoader, Runner runner) {
-        Refactor.mavenProject = mavenProject;
-        Refactor.classPath = classPath;
-        Refactor.projectClassLoader = projectClassLoader;
-        Refactor.runner = runner;
+        this.mavenProject = mavenProject;
+        this.classPath = classPath;
+        this.projectClassLoader = projectClassLoader;
+        this.runner = runner;
     }
 
     public void updateJUnitTestFiles(JavaFile javaFile)
@@ -64,7 +61,7 @@ public class Refactor {
         javaFile.writeAndReloadCompilationUnit();
     }
 
-    protected static void updateJUnit4TestFiles(JavaFile javaFile, boolean lowLevel, Set<String> methodsSet,
+    protected void updateJUnit4TestFiles(JavaFile javaFile, boolean lowLevel, Set<String> methodsSet,
                                                 Set<String> fieldsSet)
             throws DependencyResolutionRequiredException, ClassNotFoundException, IOException {
         // Before method
@@ -159,7 +156,7 @@ public class Refactor {
         updateMethods(javaFile, methodsSet, fieldsSet);
     }
 
-    protected static void updateJUnit5TestFiles(JavaFile javaFile, boolean lowLevel,
+    protected void updateJUnit5TestFiles(JavaFile javaFile, boolean lowLevel,
                                          Set<String> methodsSet, Set<String> fieldsSet)
             throws DependencyResolutionRequiredException, ClassNotFoundException, IOException {
         // BeforeEach method
@@ -256,7 +253,7 @@ public class Refactor {
         updateMethods(javaFile, methodsSet, fieldsSet);
     }
 
-    protected static void updateMethods(JavaFile javaFile, Set<String> methodsSet,
+    protected void updateMethods(JavaFile javaFile, Set<String> methodsSet,
                                         Set<String> fieldsSet)
             throws IOException, DependencyResolutionRequiredException, ClassNotFoundException {
         Set<String> remainingMethodsSet = new CopyOnWriteArraySet<>();
@@ -371,34 +368,27 @@ public class Refactor {
         }
     }
 
-    protected static Set<String> getUpperLevelClasses(JavaFile javaFile)
+    protected Set<String> getUpperLevelClasses(JavaFile javaFile)
             throws DependencyResolutionRequiredException, IOException {
-        // Get all test source files for upper module
-        List<Path> wholeTestFiles = wholeTestSources(mavenProject);
+        // Test source files of every module, indexed by class name
+        TestSourceIndex testSourceIndex = TestSourceIndex.reactor(mavenProject);
         ClassOrInterfaceDeclaration ci = javaFile.getCurCI();
         String currentLevelClassName = ci.getNameAsString();
         Set<String> set = new HashSet<String>();
         for (ClassOrInterfaceType type : ci.getExtendedTypes()) {
             set.add(type.getNameAsString());
-            for (final Path anotherFile : wholeTestFiles) {
-                if (Files.exists(anotherFile) && FilenameUtils.isExtension(
-                        anotherFile.getFileName().toString(), "java")) {
-                    if (anotherFile.getFileName().toString().equals(type.getNameAsString() + ".java")) {
-                        String newFileName = anotherFile.getFileName().toString();
-                        String newFileShortName = newFileName.substring(0, newFileName.lastIndexOf("."));
-                        JavaFile newJavaFile = JavaFile.loadFile(anotherFile, classPath,
-                                ParserPathManager.compiledPath(anotherFile).getParent(),
-                                newFileShortName, "");
-                        javaFile.setExtendedJavaFile(newJavaFile);
-                        break;
-                    }
-                }
+            for (final Path anotherFile : testSourceIndex.sourcesNamed(type.getNameAsString())) {
+                JavaFile newJavaFile = JavaFile.loadFile(anotherFile, classPath,
+                        ParserPathManager.compiledPath(anotherFile).getParent(),
+                        type.getNameAsString(), "");
+                javaFile.setExtendedJavaFile(newJavaFile);
+                break;
             }
         }
         return set;
     }
 
-    protected static void addClassAnnotations(JavaFile javaFile, Set<String> fieldsSet, Set<String> methodsSet,
+    protected void addClassAnnotations(JavaFile javaFile, Set<String> fieldsSet, Set<String> methodsSet,
                                               String beforeAnnotation, String afterAnnotation)
             throws DependencyResolutionRequiredException, ClassNotFoundException {
         // method
@@ -461,7 +451,7 @@ public class Refactor {
         } */
     }
 
-    protected static Set<String> getRelatedFields(MethodDeclaration md, JavaFile javaFile, boolean flag) {
+    protected Set<String> getRelatedFields(MethodDeclaration md, JavaFile javaFile, boolean flag) {
         Map<String, Range> variableNameMap = new HashMap<>();
         Set<String> set = new HashSet<>();
         Map<VariableDeclarator, Range> localMap = new HashMap<>();
@@ -567,7 +557,7 @@ public class Refactor {
         return set;
     }
 
-    protected static Set<String> getRelatedFields(InitializerDeclaration bd, JavaFile javaFile, boolean flag) {
+    protected Set<String> getRelatedFields(InitializerDeclaration bd, JavaFile javaFile, boolean flag) {
         Map<String, Range> variableNameMap = new HashMap<>();
         Set<String> set = new HashSet<>();
         Map<VariableDeclarator, Range> localMap = new HashMap<>();
@@ -673,7 +663,7 @@ public class Refactor {
         return set;
     }
 
-    protected static Set<String> getRelatedFields(FieldDeclaration fd, JavaFile javaFile) {
+    protected Set<String> getRelatedFields(FieldDeclaration fd, JavaFile javaFile) {
         Set<String> set = new HashSet<>();
         Map<String, Range> variableNameMap = new HashMap<>();
         Map<VariableDeclarator, Range> localMap = new HashMap<>();
@@ -715,7 +705,7 @@ public class Refactor {
         return set;
     }
 
-    protected static Set<String> getRelatedMethods(MethodDeclaration md) {
+    protected Set<String> getRelatedMethods(MethodDeclaration md) {
         Set<String> set = new HashSet<>();
         for (Statement stmt : md.getBody().get().getStatements()) {
             Queue<Node> nodes = new ArrayDeque<>();
@@ -734,7 +724,7 @@ public class Refactor {
         return set;
     }
 
-    protected static Set<String> getRelatedMethods(InitializerDeclaration bd) {
+    protected Set<String> getRelatedMethods(InitializerDeclaration bd) {
         Set<String> set = new HashSet<>();
         for (Statement stmt : bd.getBody().getStatements()) {
             Queue<Node> nodes = new ArrayDeque<>();
@@ -753,7 +743,7 @@ public class Refactor {
         return set;
     }
 
-    protected static void changeMethods(MethodDeclaration md, JavaFile javaFile) {
+    protected void changeMethods(MethodDeclaration md, JavaFile javaFile) {
         for (Statement stmt : md.getBody().get().getStatements()) {
             Queue<Node> nodes = new ArrayDeque<>();
             nodes.add(stmt);
@@ -782,7 +772,7 @@ public class Refactor {
         return;
     }
 
-    protected static void changeFields(FieldDeclaration fd, JavaFile javaFile) {
+    protected void changeFields(FieldDeclaration fd, JavaFile javaFile) {
         for (VariableDeclarator vd : fd.getVariables()) {
             Queue<Node> nodes = new ArrayDeque<>();
             nodes.add(vd);
@@ -801,35 +791,4 @@ public class Refactor {
             }
         }
     }
-
-
-    private static List<Path> wholeTestSources(MavenProject mavenProject) {
-        final List<Path> testFiles = new ArrayList<>();
-        MavenProject upperProject = mavenProject;
-        while (upperProject.hasParent()) {
-            if (upperProject.getParent() == null || upperProject.getParent().getBasedir() == null) {
-                break;
-            }
-            upperProject = upperProject.getParent();
-        }
-        // System.out.println(upperProject.getBuild().getSourceDirectory());
-        if (upperProject.getCollectedProjects() != null && upperProject.getCollectedProjects().size() > 0) {
-            for (MavenProject mp : upperProject.getCollectedProjects()) {
-                try (final Stream<Path> paths = Files.walk(Paths.get(mp.getBuild().getTestSourceDirectory()))) {
-                    paths.filter(Files::isRegularFile)
-                            .forEach(testFiles::add);
-                } catch (Exception ex) {
-                    // ex.printStackTrace();
-                }
-            }
-        } else {
-            try (final Stream<Path> paths = Files.walk(Paths.get(upperProject.getBuild().getTestSourceDirectory()))) {
-                paths.filter(Files::isRegularFile)
-                        .forEach(testFiles::add);
-            } catch (Exception ex) {
-                // ex.printStackTrace();
-            }
-        }
-        return testFiles;
-    }
 }
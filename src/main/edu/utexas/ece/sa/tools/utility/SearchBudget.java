@@ -0,0 +1,187 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import com.google.gson.GsonBuilder;
+import edu.illinois.cs.testrunner.configuration.Configuration;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run and time limits shared by the phases of one order search.
+ *
+ * The search ends as soon as an order without failures is known. Otherwise each phase gets a share of the
+ * remaining runs and time, weighted by how often it improved the best order per run; a phase that has not
+ * run yet counts as fully improving. A limit of 0 means unlimited.
+ */
+public class SearchBudget {
+    private static final double MIN_WEIGHT = 0.1;
+
+    public static SearchBudget unlimited() {
+        return new SearchBudget(Collections.emptyList(), 0, 0);
+    }
+
+    public static SearchBudget fromConfig(final List<String> phases) {
+        return new SearchBudget(phases,
+                Configuration.config().getProperty("parser.search.budget.runs", 0),
+                Configuration.config().getProperty("parser.search.budget.seconds", 0));
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final int maxRuns;
+    private final long maxNanos;
+    private final Set<String> pendingPhases;
+    private final Map<String, PhaseStats> phaseStats = new LinkedHashMap<>();
+
+    private int runs = 0;
+    private int cachedRuns = 0;
+    private int bestFailures = Integer.MAX_VALUE;
+    private List<String> bestOrder = null;
+    private PhaseStats currentPhase = null;
+
+    public SearchBudget(final List<String> phases, final int maxRuns, final int maxSeconds) {
+        this.pendingPhases = new LinkedHashSet<>(phases);
+        this.maxRuns = maxRuns;
+        this.maxNanos = TimeUnit.SECONDS.toNanos(maxSeconds);
+        for (final String phase : phases) {
+            phaseStats.put(phase, new PhaseStats(phase));
+        }
+    }
+
+    /**
+     * Starts (or resumes) a phase that wants to run at most the requested number of orders.
+     * @return The number of runs the phase may use.
+     */
+    public synchronized int beginPhase(final String phase, final int requestedRuns) {
+        currentPhase = phaseStats.computeIfAbsent(phase, PhaseStats::new);
+        currentPhase.startNanos = System.nanoTime();
+
+        final double share = weight(phase) / (weight(phase) + pendingPhases.stream()
+                .filter(pending -> !pending.equals(phase)).mapToDouble(this::weight).sum());
+        currentPhase.allowedRuns = maxRuns > 0
+                ? Math.min(requestedRuns, Math.max(1, (int) Math.ceil((maxRuns - runs) * share)))
+                : requestedRuns;
+        currentPhase.allowedNanos = maxNanos > 0
+                ? Math.max(0, (long) ((maxNanos - elapsedNanos()) * share))
+                : Long.MAX_VALUE;
+        currentPhase.phaseRuns = 0;
+        return currentPhase.allowedRuns;
+    }
+
+    public synchronized void endPhase() {
+        if (currentPhase != null) {
+            final long endNanos = System.nanoTime();
+            currentPhase.nanos += endNanos - currentPhase.startNanos;
+            Timeline.record("search", currentPhase.name, currentPhase.startNanos, endNanos);
+            currentPhase = null;
+        }
+    }
+
+    /**
+     * Marks a phase as done, so the remaining budget is divided among the phases after it.
+     */
+    public synchronized void completePhase(final String phase) {
+        endPhase();
+        pendingPhases.remove(phase);
+    }
+
+    private double weight(final String phase) {
+        final PhaseStats stats = phaseStats.get(phase);
+        if (stats == null || stats.runs == 0) {
+            return 1.0;
+        }
+        return Math.max(MIN_WEIGHT, Math.min(1.0, (double) stats.improvements / stats.runs * 10));
+    }
+
+    /**
+     * Records the failures of an order that was already known, without spending a run.
+     */
+    public synchronized void observe(final List<String> order, final int failures) {
+        if (failures < bestFailures) {
+            bestFailures = failures;
+            bestOrder = new ArrayList<>(order);
+        }
+    }
+
+    public synchronized void record(final List<String> order, final int failures, final boolean cached) {
+        if (cached) {
+            cachedRuns++;
+        } else {
+            runs++;
+        }
+        if (currentPhase != null) {
+            currentPhase.runs++;
+            currentPhase.phaseRuns++;
+            if (failures < bestFailures) {
+                currentPhase.improvements++;
+            }
+        }
+        observe(order, failures);
+    }
+
+    /**
+     * @return Whether the search (or the current phase) should stop running orders.
+     */
+    public synchronized boolean exhausted() {
+        if (bestFailures == 0) {
+            return true;
+        }
+        if (maxRuns > 0 && runs >= maxRuns) {
+            return true;
+        }
+        if (maxNanos > 0 && elapsedNanos() >= maxNanos) {
+            return true;
+        }
+        if (currentPhase != null) {
+            return currentPhase.phaseRuns >= currentPhase.allowedRuns
+                    || System.nanoTime() - currentPhase.startNanos >= currentPhase.allowedNanos;
+        }
+        return false;
+    }
+
+    public synchronized int bestFailures() {
+        return bestFailures;
+    }
+
+    public synchronized List<String> bestOrder() {
+        return bestOrder;
+    }
+
+    private long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public synchronized String summary() {
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("runs", runs);
+        summary.put("cachedRuns", cachedRuns);
+        summary.put("maxRuns", maxRuns);
+        summary.put("elapsedSeconds", elapsedNanos() / 1e9);
+        summary.put("maxSeconds", maxNanos / 1e9);
+        summary.put("bestFailures", bestFailures);
+        final Map<String, Object> phases = new LinkedHashMap<>();
+        phaseStats.forEach((name, stats) -> {
+            final Map<String, Object> phase = new LinkedHashMap<>();
+            phase.put("runs", stats.runs);
+            phase.put("improvements", stats.improvements);
+            phase.put("seconds", stats.nanos / 1e9);
+            phases.put(name, phase);
+        });
+        summary.put("phases", phases);
+        return new GsonBuilder().create().toJson(summary);
+    }
+
+    private static final class PhaseStats {
+        private final String name;
+        private int runs = 0;
+        private int improvements = 0;
+        private long nanos = 0;
+        private long startNanos = 0;
+        private int phaseRuns = 0;
+        private int allowedRuns = Integer.MAX_VALUE;
+        private long allowedNanos = Long.MAX_VALUE;
+
+        private PhaseStats(final String name) {
+            this.name = name;
+        }
+    }
+}
@@ -1,41 +1,98 @@
 package edu.utexas.ece.sa.tools.utility;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import edu.illinois.cs.testrunner.configuration.Configuration;
 import edu.illinois.cs.testrunner.data.results.TestResult;
+import edu.illinois.cs.testrunner.data.results.TestRunResult;
 import edu.illinois.cs.testrunner.runner.Runner;
+import edu.utexas.ece.sa.tools.runner.InstrumentingSmartRunner;
 import scala.Int;
+import scala.util.Try;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class ShuffleOrdersUtils {
     // Total test order shuffle times
-    private static int shuffleTimes = 5;
-    private static HashMap<List<String>,Set<String>> orderFailedTestsCache=new HashMap<>();
-    private static HashSet<String> allTests=new HashSet<>();
-    public static <T> List<List<T>> generatePermutations(List<T> list) {
-        List<List<T>> results = new ArrayList<>();
-        backtrack(list, new LinkedList<>(), results);
-        return results;
+    private static final int SHUFFLE_TIMES = 5;
+    private static final int BRUTE_FORCE_CHUNK = 64;
+    private static final int RANDOM_ORDERS = 1000;
+    private static final int NEW_ORDER_ROUNDS = 1000;
+    // Shared by the runner pool workers and persisted across runs under the cache path
+    private static final OrderFailuresCache orderFailedTestsCache=new OrderFailuresCache();
+    /**
+     * Called after the classes were compiled again, so cached results are looked up under their new fingerprint.
+     */
+    public static void classesChanged() {
+        orderFailedTestsCache.classesChanged();
     }
 
-    private static <T> void backtrack(List<T> nums, List<T> tempList, List<List<T>> results) {
-        if (tempList.size() == nums.size()) {
-            results.add(new ArrayList<>(tempList));
-        } else {
-            for (int i = 0; i < nums.size(); i++) {
-                if (tempList.contains(nums.get(i))) continue; // element already exists, skip
-                tempList.add(nums.get(i));
-                backtrack(nums, tempList, results);
-                tempList.remove(tempList.size() - 1);
-            }
+    // Held around each run or batch of runs, or null to run without a lock
+    private static volatile Lock runLock = null;
+
+    /**
+     * Sets the lock held around each run or batch of runs, such as the read lock of one whose write lock is held
+     * while sources are edited and compiled. Held per run, so a long search does not keep the writers waiting.
+     */
+    public static void setRunLock(Lock lock) {
+        runLock = lock;
+    }
+
+    private static <T> T underRunLock(Supplier<T> run) {
+        Lock lock = runLock;
+        if (lock == null) {
+            return run.get();
+        }
+        lock.lock();
+        try {
+            return run.get();
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Runs the tests in the given order under the run lock, without looking up or caching the result.
+     */
+    public static Try<TestRunResult> runList(List<String> testOrder, Runner runner) {
+        return underRunLock(() -> runner.runList(testOrder));
+    }
+
+    // parser.search.seed as read by loadSearchSeed, or null to seed each search at random
+    private static Long searchSeed = null;
+
+    /**
+     * Reads parser.search.seed once, before any search runs, so a malformed seed stops the run up front.
+     */
+    public static void loadSearchSeed() {
+        String seed = Configuration.config().getProperty("parser.search.seed", "").trim();
+        if (seed.isEmpty()) {
+            searchSeed = null;
+            return;
+        }
+        try {
+            searchSeed = Long.parseLong(seed);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("parser.search.seed must be a whole number, got: " + seed);
+        }
+    }
+
+    public static <T> List<List<T>> generatePermutations(List<T> list) {
+        List<List<T>> results = new ArrayList<>();
+        new Permutations<>(list).forEach(results::add);
+        return results;
+    }
+
     public static int runTestsInOrderCli(List<String> testOrder) throws IOException, InterruptedException, IOException {
         System.out.println("RUNNING RESULTS WITH ORDER: " + testOrder);
 
@@ -59,6 +116,7 @@ public class ShuffleOrdersUtils {
         BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
         String line;
         Set<String> curFailedTests = new HashSet<>();
+        Set<String> orderTests = new HashSet<>(testOrder);
         int skippedTests = 0;
         Pattern failurePattern = Pattern.compile("\\[ERROR\\] (.*)\\s+Time elapsed:.*<<< FAILURE!");
         Pattern errorPattern = Pattern.compile("\\[ERROR\\] (.*)\\s+Time elapsed:.*<<< ERROR!");
@@ -74,13 +132,13 @@ public class ShuffleOrdersUtils {
             if (failureMatcher.find()) {
                 String testName = failureMatcher.group(1).replace("#", ".").trim(); // Ensure no leading/trailing whitespace
                 System.out.println(testName);
-                if(allTests.contains(testName))
+                if(orderTests.contains(testName))
                     curFailedTests.add(testName); // Capture the failed test name
             }
             if (errorMatcher.find()) {
                 String testName = errorMatcher.group(1).replace("#", ".").trim(); // Ensure no leading/trailing whitespace
                 System.out.println(testName);
-                if(allTests.contains(testName))
+                if(orderTests.contains(testName))
                     curFailedTests.add(testName); // Capture the failed test name
             }
             if (skippedMatcher.find()) {
@@ -88,7 +146,7 @@ public class ShuffleOrdersUtils {
             }
         }
 
-        orderFailedTestsCache.put(new LinkedList<>(testOrder), new HashSet<>(curFailedTests));
+        orderFailedTestsCache.put(testOrder, curFailedTests);
 
         System.out.println("RUNNING RESULTS WITH ORDER FAILED CNT: " + curFailedTests.size());
         System.out.println("RUNNING RESULTS WITH ORDER SKIPPED CNT: " + skippedTests);
@@ -99,55 +157,160 @@ public class ShuffleOrdersUtils {
 
     public static int runTestsInOrder(List<String> testOrder, Runner runner) {
         //System.out.println("RUNNING RESULTS WITH ORDER: " + testOrder);
-        Map<String, TestResult> newResults = runner.runList(testOrder).get().results();
+        Set<String> cachedFailedTests = orderFailedTestsCache.get(testOrder);
+        if (cachedFailedTests != null) {
+            System.out.println("CACHED RESULTS WITH ORDER FAILED CNT: " + cachedFailedTests.size());
+            return cachedFailedTests.size();
+        }
+        return runTestsInOrderUncached(testOrder, runner).size();
+    }
+
+    // Runs the order even if its result is cached, and caches the new result
+    private static Set<String> runTestsInOrderUncached(List<String> testOrder, Runner runner) {
+        if (runner instanceof InstrumentingSmartRunner && ((InstrumentingSmartRunner) runner).usesDaemon()) {
+            Try<List<Map<String, String>>> results = underRunLock(() ->
+                    ((InstrumentingSmartRunner) runner).runOrders(Collections.singletonList(testOrder)));
+            if (results.isSuccess()) {
+                return recordResults(testOrder, results.get().get(0));
+            }
+            System.out.println("ORDER DAEMON FAILED, RUNNING ORDER IN A NEW JVM: " + results.failed().get().getMessage());
+        }
+        Map<String, TestResult> newResults = runList(testOrder, runner).get().results();
+        return recordResults(testOrder, Maps.transformValues(newResults, testResult -> testResult.result().toString()));
+    }
+
+    // Caches the failed tests of an order from the result (PASS, FAILURE, ERROR or SKIPPED) of each of its tests
+    private static Set<String> recordResults(List<String> testOrder, Map<String, String> newResults) {
         Set<String> curFailedTests = new HashSet<>();
         int skippedTests=0;
         for (String key : newResults.keySet()) {
-            TestResult testResult = newResults.get(key);
-            if (testResult.result().toString().equals("FAILURE") ||
-                    testResult.result().toString().equals("ERROR")) {
+            String result = newResults.get(key);
+            if (result.equals("FAILURE") || result.equals("ERROR")) {
                 curFailedTests.add(key);
             }
-            if (testResult.result().toString().equals("SKIPPED")) {
+            if (result.equals("SKIPPED")) {
                 skippedTests++;
                 continue;
             }
         }
-        orderFailedTestsCache.put(new LinkedList<String> (testOrder), new HashSet<String> (curFailedTests));
+        // A test the run never reported on did not pass, so the order is not counted as better than it is
+        for (String test : testOrder) {
+            if (!newResults.containsKey(test)) {
+                System.out.println("NO RESULT FOR " + test + ", COUNTED AS ERROR");
+                curFailedTests.add(test);
+            }
+        }
+        orderFailedTestsCache.put(testOrder, curFailedTests);
         System.out.println("RUNNING RESULTS WITH ORDER FAILED CNT: " + curFailedTests.size());
         System.out.println("RUNNING RESULTS WITH ORDER SKIPPED CNT: " + skippedTests);
         System.out.println("FROM ALL TESTS: " + testOrder.size());
-        return curFailedTests.size();
+        return curFailedTests;
+    }
+
+    /**
+     * Runs every order afresh, even if its result is cached, spread over parser.search.workers runners. With
+     * stopAtFailure, the orders that have not started once one of them has a failure are skipped.
+     * @return The failed tests of each order, in the same order as the given orders, or null for a skipped one.
+     */
+    private static List<Set<String>> runTestsInOrdersUncached(List<List<String>> orders, Runner runner,
+                                                              boolean stopAtFailure) {
+        int workers = Configuration.config().getProperty("parser.search.workers", 1);
+        Predicate<Set<String>> stop = failedTests -> stopAtFailure && !failedTests.isEmpty();
+        if (workers <= 1 || orders.size() <= 1 || !(runner instanceof InstrumentingSmartRunner)) {
+            List<Set<String>> failedTests = new ArrayList<>();
+            boolean stopped = false;
+            for (List<String> order : orders) {
+                Set<String> orderFailedTests = stopped ? null : runTestsInOrderUncached(order, runner);
+                stopped = stopped || stop.test(orderFailedTests);
+                failedTests.add(orderFailedTests);
+            }
+            return failedTests;
+        }
+        System.out.println("RUNNING " + orders.size() + " ORDERS ON " + workers + " WORKERS");
+        return ((InstrumentingSmartRunner) runner).pool(workers)
+                .mapUntil(orders, (worker, order) -> runTestsInOrderUncached(order, worker), stop);
     }
 
     public static int getFailedByBruteForce(List<String> originalTests,Runner runner) throws IOException, InterruptedException {
-        List<List<String>> permutations = generatePermutations(originalTests);
+        return getFailedByBruteForce(originalTests, runner, SearchBudget.unlimited());
+    }
+
+    public static int getFailedByBruteForce(List<String> originalTests, Runner runner, SearchBudget budget) {
+        Permutations<String> permutations = new Permutations<>(originalTests);
         int minFailures=originalTests.size();
-        for (int i=0;i<permutations.size();i++) {
-            List<String> testOrder=permutations.get(i);
-            int failures = runTestsInOrder(testOrder,runner);
-            //int failures=runTestsInOrderCli(testOrder);
-            if (failures < minFailures) {
-                minFailures = failures;
+        if (Configuration.config().getProperty("parser.bruteforce.exhaustive", false)) {
+            // Run the permutations a chunk at a time, so none are built after an order without failures
+            Iterator<List<String>> iterator = permutations.iterator();
+            while (iterator.hasNext() && !budget.exhausted()) {
+                List<List<String>> chunk = new ArrayList<>();
+                while (iterator.hasNext() && chunk.size() < BRUTE_FORCE_CHUNK) {
+                    chunk.add(iterator.next());
+                }
+                for (int failures : runTestsInOrders(chunk, runner, budget)) {
+                    if (failures < minFailures) {
+                        minFailures = failures;
+                    }
+                }
             }
+            return minFailures;
         }
+        DependencyAwareSearch search = new DependencyAwareSearch(originalTests,
+                order -> failedTestsInOrder(order, runner, budget));
+        minFailures = search.search(permutations, budget::exhausted);
+        System.out.println("DEPENDENCY-AWARE SEARCH RAN " + search.runs() + " OF " + permutations.size() +
+                " ORDERS, SAVED " + (permutations.size() - search.runs()) + " RUNS");
         return minFailures;
     }
 
+    /**
+     * @return The tests that failed in the order, or null if it has not run.
+     */
+    public static Set<String> cachedFailedTests(List<String> testOrder) {
+        return orderFailedTestsCache.get(testOrder);
+    }
+
+    /**
+     * @return The tests that failed in the order, which only runs if its result is not cached yet.
+     */
+    public static Set<String> failedTestsInOrder(List<String> testOrder, Runner runner) {
+        runTestsInOrder(testOrder, runner);
+        return orderFailedTestsCache.get(testOrder);
+    }
+
+    private static Set<String> failedTestsInOrder(List<String> testOrder, Runner runner, SearchBudget budget) {
+        runTestsInOrder(testOrder, runner, budget);
+        return orderFailedTestsCache.get(testOrder);
+    }
+
+    // Runs an order and charges it to the budget, unless its result was already cached
+    private static int runTestsInOrder(List<String> testOrder, Runner runner, SearchBudget budget) {
+        boolean cached = orderFailedTestsCache.containsKey(testOrder);
+        int failures = runTestsInOrder(testOrder, runner);
+        budget.record(testOrder, failures, cached);
+        return failures;
+    }
+
     public static int getFailedByRandom(List<String> originalTests,Runner runner) throws IOException, InterruptedException {
-        Set<List<String>> orders = new HashSet<>();
-        List<String> order = new LinkedList<>(originalTests);
-        int minFailures=originalTests.size();
-        for (int i=0;i<1000;i++) {
-            while (orders.contains(order)) {
-                long generatedSeed = new Random().nextLong();
-                // Use the generated seed for reproducibility
-                Random random = new Random(generatedSeed);
+        return getFailedByRandom(originalTests, runner, SearchBudget.unlimited());
+    }
 
+    public static int getFailedByRandom(List<String> originalTests, Runner runner, SearchBudget budget) {
+        List<List<String>> candidates = new ArrayList<>();
+        Set<PackedOrder> orders = new HashSet<>();
+        List<String> order = new ArrayList<>(originalTests);
+        // Draw every candidate up front, so the searched orders do not depend on how many workers run them
+        Random random = searchRandom();
+        for (int i=0;i<RANDOM_ORDERS;i++) {
+            PackedOrder packed = PackedOrder.of(order);
+            while (orders.contains(packed)) {
                 Collections.shuffle(order, random);
+                packed = PackedOrder.of(order);
             }
-            orders.add(new LinkedList<>(order));
-            int failures = runTestsInOrder(order,runner);
+            orders.add(packed);
+            candidates.add(new ArrayList<>(order));
+        }
+        int minFailures=originalTests.size();
+        for (int failures : runTestsInOrders(candidates, runner, budget)) {
             //int failures=runTestsInOrderCli(order);
             if (failures < minFailures) {
                 minFailures = failures;
@@ -156,66 +319,154 @@ public class ShuffleOrdersUtils {
         return minFailures;
     }
 
-    public static int getFailedCntNew(List<String> originalTests, Set<String> failedTests, Runner runner, AtomicInteger cnt,HashSet<List<String>> visited) throws IOException, InterruptedException {
-        if(failedTests.size()==0){
-            return 0;
-        }
-        if(cnt.get()>1000){
-            return failedTests.size();
-        }
-        visited.add(originalTests);
-        int minTests=failedTests.size();
-        for(String failedTest:failedTests){
-            if(minTests==0)
-                return 0;
-            List<String> tempOrder = new LinkedList<>(originalTests);
-            tempOrder.remove(failedTest);
-            tempOrder.add(0,failedTest);
-            if(visited.contains(tempOrder)){
-                continue;
+    public static List<Integer> runTestsInOrders(List<List<String>> orders, Runner runner) {
+        return runTestsInOrders(orders, runner, SearchBudget.unlimited());
+    }
+
+    /**
+     * Runs the orders until the budget is exhausted, spreading them over parser.search.workers forked runners
+     * when more than one is configured, and running parser.runner.batch orders per forked JVM when it is above 1.
+     * @return The failure count of each order that ran, in the same order as the given orders.
+     */
+    public static List<Integer> runTestsInOrders(List<List<String>> orders, Runner runner, SearchBudget budget) {
+        int workers = Configuration.config().getProperty("parser.search.workers", 1);
+        int batchSize = Configuration.config().getProperty("parser.runner.batch", 1);
+        boolean batched = batchSize > 1 && runner instanceof InstrumentingSmartRunner &&
+                ((InstrumentingSmartRunner) runner).supportsBatches();
+        List<List<List<String>>> units = Lists.partition(orders, batched ? batchSize : 1);
+        BiFunction<Runner, List<List<String>>, List<Integer>> runUnit = batched
+                ? (worker, batch) -> runTestsInBatch(batch, (InstrumentingSmartRunner) worker, budget)
+                : (worker, single) -> budget.exhausted() ? Collections.emptyList()
+                        : Collections.singletonList(runTestsInOrder(single.get(0), worker, budget));
+
+        List<List<Integer>> failures;
+        if (workers <= 1 || units.size() <= 1 || !(runner instanceof InstrumentingSmartRunner)) {
+            failures = new ArrayList<>();
+            for (List<List<String>> unit : units) {
+                if (budget.exhausted()) {
+                    break;
+                }
+                failures.add(runUnit.apply(runner, unit));
             }
-            int failCount=0;
-            Set<String> curFailedTests = new HashSet<>();
-            if(orderFailedTestsCache.containsKey(tempOrder)){
-
-                curFailedTests=orderFailedTestsCache.get(tempOrder);
-                failCount=curFailedTests.size();
-            }else{
-                failCount=runTestsInOrder(tempOrder,runner);
-                //failCount=runTestsInOrderCli(tempOrder);
-                curFailedTests=orderFailedTestsCache.get(tempOrder);
+        } else {
+            System.out.println("RUNNING " + orders.size() + " ORDERS ON " + workers + " WORKERS");
+            // The pool lives as long as the runner, so its copies (and their warm workers) serve every call
+            failures = ((InstrumentingSmartRunner) runner).pool(workers).map(units, runUnit);
+        }
+        return failures.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    // Runs the uncached orders of a batch in one forked JVM, falling back to one JVM per order if the batch fails
+    private static List<Integer> runTestsInBatch(List<List<String>> batch, InstrumentingSmartRunner runner,
+                                                 SearchBudget budget) {
+        if (budget.exhausted()) {
+            return Collections.emptyList();
+        }
+        List<Boolean> cached = new ArrayList<>();
+        List<List<String>> pending = new ArrayList<>();
+        for (List<String> order : batch) {
+            cached.add(orderFailedTestsCache.containsKey(order));
+            if (!cached.get(cached.size() - 1)) {
+                pending.add(order);
             }
-            System.out.println("RUNNING RESULTS WITH ORDER: " + tempOrder);
-            cnt.incrementAndGet();
-            System.out.println("RUNNING RESULTS WITH NEW ORDER: " + failCount);
-            System.out.println("Failed Tests: "+ curFailedTests);
-            if(failCount<failedTests.size()){
-                minTests=Math.min(minTests,getFailedCntNew(tempOrder,curFailedTests,runner,cnt,visited));
+        }
+        if (!pending.isEmpty()) {
+            System.out.println("RUNNING " + pending.size() + " ORDERS IN ONE BATCH");
+            Try<List<Map<String, String>>> results = underRunLock(() -> runner.runOrders(pending));
+            if (results.isSuccess()) {
+                for (int i = 0; i < pending.size(); i++) {
+                    recordResults(pending.get(i), results.get().get(i));
+                }
+            } else {
+                System.out.println("BATCHED RUN FAILED, RUNNING ORDERS SEPARATELY: " + results.failed().get().getMessage());
             }
         }
-        return minTests;
+        List<Integer> failures = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            int failCount = runTestsInOrder(batch.get(i), runner);
+            budget.record(batch.get(i), failCount, cached.get(i));
+            failures.add(failCount);
+        }
+        return failures;
     }
 
-    public static List<String> shuffleAllTests(List<String> originalTests, Set<String> failedTests, Runner runner) throws IOException, InterruptedException {
-        for(String test:originalTests){
-            allTests.add(test);
+    // Seeded from parser.search.seed when given, so that a search can be replayed
+    private static Random searchRandom() {
+        if (searchSeed == null) {
+            return new Random(new Random().nextLong());
         }
+        return new Random(searchSeed);
+    }
 
+    /**
+     * Looks for a better order than the given one by moving failed tests to the front, best orders first, running
+     * parser.search.beam orders' worth of neighbours per step.
+     * @return The order with the fewest failures found.
+     */
+    public static List<String> getBestNewOrder(List<String> originalTests, Set<String> failedTests, Runner runner) {
+        return getBestNewOrder(PackedOrder.of(originalTests), failedTests, runner, SearchBudget.unlimited()).toList();
+    }
+
+    public static PackedOrder getBestNewOrder(PackedOrder originalTests, Set<String> failedTests, Runner runner, SearchBudget budget) {
+        BestFirstOrderSearch search = new BestFirstOrderSearch(BestFirstOrderSearch.FAILED_TO_FRONT,
+                orders -> failedTestsInOrders(orders, runner, budget),
+                Configuration.config().getProperty("parser.search.beam", 1), NEW_ORDER_ROUNDS, budget::exhausted);
+        PackedOrder bestOrder = search.search(originalTests, failedTests);
+        System.out.println("Least failed cnt: " + search.bestFailures() + " From all tests: " + originalTests.size() + "\n");
+        System.out.println("Total Rounds Tried: " + search.evaluations());
+        return bestOrder;
+    }
+
+    // Runs the orders (cached ones are not run again) and reads their failed tests back from the cache
+    private static List<Set<String>> failedTestsInOrders(List<PackedOrder> orders, Runner runner, SearchBudget budget) {
+        List<List<String>> lists = new ArrayList<>();
+        for (PackedOrder order : orders) {
+            lists.add(order.toList());
+        }
+        runTestsInOrders(lists, runner, budget);
+        List<Set<String>> failedTests = new ArrayList<>();
+        for (PackedOrder order : orders) {
+            Set<String> curFailedTests = orderFailedTestsCache.get(order);
+            if (curFailedTests != null) {
+                System.out.println("RUNNING RESULTS WITH ORDER: " + order);
+                System.out.println("RUNNING RESULTS WITH NEW ORDER: " + curFailedTests.size());
+                System.out.println("Failed Tests: " + curFailedTests);
+            }
+            failedTests.add(curFailedTests);
+        }
+        return failedTests;
+    }
+
+    public static List<String> shuffleAllTests(List<String> originalTests, Set<String> failedTests, Runner runner) throws IOException, InterruptedException {
         System.out.println("ORIGINAL TESTS ORDER: " + originalTests);
         System.out.println("INITIAL FAILED COUNTS: " + failedTests.size());
         int leastFailedCnt;
-        if(originalTests.size()>7){
-            leastFailedCnt=getFailedByRandom(originalTests, runner);
+        int bruteForceThreshold = Math.min(Permutations.MAX_ELEMENTS,
+                Configuration.config().getProperty("parser.bruteforce.threshold", 7));
+        boolean randomPhase = originalTests.size() > bruteForceThreshold;
+        String initialPhase = randomPhase ? "random" : "brute-force";
+        SearchBudget budget = SearchBudget.fromConfig(Arrays.asList(initialPhase, "new-order", "shuffle"));
+        budget.observe(originalTests, failedTests.size());
+        if (budget.exhausted()) {
+            System.out.println("ORIGINAL ORDER HAS NO FAILURES, SKIPPING SEARCH");
+            return new LinkedList<>(originalTests);
+        }
+        if(randomPhase){
+            budget.beginPhase(initialPhase, RANDOM_ORDERS);
+            leastFailedCnt=getFailedByRandom(originalTests, runner, budget);
             System.out.println("=====START PRINTING FAILED COUNTS IN RANDOM 1000=====\n");
             System.out.println("Least failed cnt: "+ leastFailedCnt+" From all tests: "+originalTests.size());
         }else{
-            leastFailedCnt=getFailedByBruteForce(originalTests,runner);
+            budget.beginPhase(initialPhase, (int) Math.min(Integer.MAX_VALUE, new Permutations<>(originalTests).size()));
+            leastFailedCnt=getFailedByBruteForce(originalTests,runner,budget);
             System.out.println("=====START PRINTING FAILED COUNTS IN BRUTE FORCE=====\n");
             System.out.println("Least failed cnt: "+ leastFailedCnt+" From all tests: "+originalTests.size());
         }
+        budget.completePhase(initialPhase);
 
-        if(orderFailedTestsCache.containsKey(originalTests)){
-            failedTests=orderFailedTestsCache.get(originalTests);
+        Set<String> cachedFailedTests = orderFailedTestsCache.get(originalTests);
+        if(cachedFailedTests != null){
+            failedTests=cachedFailedTests;
         }
 
 
@@ -226,34 +477,41 @@ public class ShuffleOrdersUtils {
 
         List<String> newOrder = new LinkedList<>(originalTests);
 
-        Set<List<String>> triedOrders = new HashSet<>();
+        Set<PackedOrder> triedOrders = new HashSet<>();
         Set<String> newFailedTests = new HashSet<>(failedTests);
-        for(int i=0;i<num;i++){
+        Random newOrderRandom = searchRandom();
+        budget.beginPhase("new-order", num * NEW_ORDER_ROUNDS);
+        for(int i=0;i<num && !budget.exhausted();i++){
             System.out.println("=====START PRINTING FAILED COUNTS IN NEW ORDER=====\n");
-            triedOrders.add(newOrder);
-            AtomicInteger rounds = new AtomicInteger(0);
-            HashSet<List<String>> visited=new HashSet<>();
+            PackedOrder packedOrder = PackedOrder.of(newOrder);
+            triedOrders.add(packedOrder);
             System.out.println("TRIED TESTS ORDER: " + newOrder);
             System.out.println("Initial Failed Count: " + newFailedTests.size());
-            System.out.println("Least failed cnt: "+getFailedCntNew(newOrder, newFailedTests, runner,rounds,visited) +" From all tests: "+newOrder.size()+"\n");
-            System.out.println("Total Rounds Tried: "+rounds);
-            while(triedOrders.contains(newOrder)){
-                Collections.shuffle(newOrder);
+            getBestNewOrder(packedOrder, newFailedTests, runner, budget);
+            // The search may have used up the phase, so do not run one more order past it
+            if (budget.exhausted()) {
+                break;
+            }
+            while(triedOrders.contains(packedOrder)){
+                Collections.shuffle(newOrder, newOrderRandom);
+                packedOrder = PackedOrder.of(newOrder);
             }
-            runTestsInOrder(newOrder,runner);
+            runTestsInOrder(newOrder,runner,budget);
             //runTestsInOrderCli(newOrder);
             newFailedTests=orderFailedTestsCache.get(newOrder);
         }
+        budget.completePhase("new-order");
 
         System.out.println("=====END PRINTING FAILED COUNTS IN NEW ALGO=====\n");
 
         List<String> order = new LinkedList<>(originalTests);
         List<String> bestOrder = new LinkedList<>(originalTests);
-        Set<List<String>> orders = new HashSet<>();
+        Set<PackedOrder> orders = new HashSet<>();
         Set<String> initialFailedTests = new HashSet<>(failedTests);
         int threshold = initialFailedTests.size();
 
         int size = order.size();
+        int shuffleTimes = SHUFFLE_TIMES;
         if (size == 1) {
             shuffleTimes = 0;
         } else if (size == 2) {
@@ -262,24 +520,27 @@ public class ShuffleOrdersUtils {
 
         boolean hasBetterOrder = false;
         int i = 0;
-        while (i < shuffleTimes) {
+        Random seeds = searchRandom();
+        budget.beginPhase("shuffle", shuffleTimes);
+        while (i < shuffleTimes && !budget.exhausted()) {
             Set<String> curFailedTests = new HashSet<>();
             // Generate a seed and print it
-            long generatedSeed = new Random().nextLong();
+            long generatedSeed = seeds.nextLong();
             // System.out.println("Generated seed: " + generatedSeed);
 
             // Use the generated seed for reproducibility
             Random random = new Random(generatedSeed);
 
             Collections.shuffle(order, random);
-            if (orders.contains(order)) {
+            PackedOrder packed = PackedOrder.of(order);
+            if (orders.contains(packed)) {
                 System.out.println("CURRENT TESTS ORDER EXISTS, SKIPPING.....");
                 continue;
             }
             i++;
-            orders.add(new LinkedList<>(order));
+            orders.add(packed);
             System.out.println("NEW TESTS ORDER: " + order);
-            Map<String, TestResult> newResultsRandom = runner.runList(order).get().results();
+            Map<String, TestResult> newResultsRandom = runList(order, runner).get().results();
             System.out.println("RUNNING RESULTS WITH NEW ORDER: " + newResultsRandom);
             int failedCnt = 0;
             boolean skipped = false;
@@ -301,6 +562,7 @@ public class ShuffleOrdersUtils {
             if (skipped) {
                 continue;
             }
+            budget.record(order, failedCnt, false);
             if (failedCnt < threshold) {
                 hasBetterOrder = true;
                 bestOrder = new LinkedList<>(order);
@@ -310,6 +572,15 @@ public class ShuffleOrdersUtils {
                 failedTests = new HashSet<>(curFailedTests);
             }
         }
+        budget.completePhase("shuffle");
+        // The earlier phases may have run a better order than any of the shuffles
+        if (budget.bestOrder() != null && budget.bestFailures() < threshold) {
+            hasBetterOrder = true;
+            bestOrder = new LinkedList<>(budget.bestOrder());
+            threshold = budget.bestFailures();
+        }
+        System.out.println("SEARCH BUDGET SUMMARY: " + budget.summary());
+        System.out.println("ORDER CACHE SUMMARY: " + orderFailedTestsCache.summary());
         if (hasBetterOrder) {
             System.out.println("THERE IS A BETTER ORDER THAN ORIGINAL!");
             System.out.println("THE BEST ORDER IN THIS CLASS IS: ");
@@ -319,88 +590,108 @@ public class ShuffleOrdersUtils {
             failedTests = initialFailedTests;
             System.out.println("NO BETTER ORDER THAN ORIGINAL!");
         }
-        shuffleTimes = 5;
         return bestOrder;
     }
 
-    public static void checkTestsOrder(Map<String, List<String>> splitTests, Runner runner){
+    /**
+     * Runs the tests of the split classes in their order and in up to SHUFFLE_TIMES x SHUFFLE_TIMES shuffled
+     * orders (shuffling the classes, then the tests within each), a wave of parser.search.workers orders at a time.
+     * The given lists are not changed.
+     *
+     * Every order runs afresh, since a cached result may come from classes compiled before the split. Verification
+     * stops early once the orders run without a failure make it at least parser.verify.confidence likely (0, the
+     * default, never stops early) that a dependency failing in parser.verify.failureRate of the orders would have
+     * shown up. With parser.verify.failFast, it stops at the first order with a failure; the orders of its wave that
+     * are already running finish, and the others are skipped.
+     * @return The tests that failed in any order.
+     */
+    public static Set<String> checkTestsOrder(Map<String, List<String>> splitTests, Runner runner){
         System.out.println("=====START CHECKING TESTS ORDER AFTER SPLIT=====\n");
 
         splitTests.forEach((key, value) -> System.out.println(key + " " + value));
+        Map<String, List<String>> classTests = new LinkedHashMap<>();
         List<String> allTests = new ArrayList<>();
-        List<String> allClasses = new ArrayList<>();
-        for(String newClass : splitTests.keySet()){
-            allClasses.add(newClass);
-            List<String> testsInOrder = splitTests.get(newClass);
-            allTests.addAll(testsInOrder);
-        }
-        HashSet<List<String>> allOrders = new HashSet<>();
-        allOrders.add(new ArrayList<>(allTests));
-        System.out.println("ALL TESTS ORDER: " + allTests);
-        Set<String> failedTests = new HashSet<>();
-        boolean foundFail = false;
-        Map<String, TestResult> newResultsInOrder = runner.runList(allTests).get().results();
-        for (String key : newResultsInOrder.keySet()) {
-            TestResult testResult = newResultsInOrder.get(key);
-            if (testResult.result().toString().equals("FAILURE")) {
-                System.out.println("FOUND FAILURE IN CURRENT ORDER! " + key);
-                failedTests.add(key);
-                foundFail = true;
-            }
-            if (testResult.result().toString().equals("ERROR")) {
-                System.out.println("FOUND ERROR IN CURRENT ORDER! " + key);
-                failedTests.add(key);
-                foundFail = true;
-            }
+        for (Map.Entry<String, List<String>> newClass : splitTests.entrySet()) {
+            classTests.put(newClass.getKey(), new ArrayList<>(newClass.getValue()));
+            allTests.addAll(newClass.getValue());
         }
-        System.out.println("RUNNING RESULTS WITH ALL TESTS IN ABOVE ORDER: " + newResultsInOrder);
-        for (int i = 0; i < shuffleTimes; i++) {
-            // Generate a seed and print it
-            long generatedSeed = new Random().nextLong();
-            System.out.println("Generated seed: " + generatedSeed);
+        System.out.println("ALL TESTS ORDER: " + allTests);
 
-            // Use the generated seed for reproducibility
+        // Draw every order up front, so the verified orders do not depend on how many workers run them
+        List<List<String>> orders = new ArrayList<>();
+        Set<PackedOrder> drawnOrders = new HashSet<>();
+        orders.add(allTests);
+        drawnOrders.add(PackedOrder.of(allTests));
+        List<String> allClasses = new ArrayList<>(classTests.keySet());
+        Random seeds = searchRandom();
+        for (int i = 0; i < SHUFFLE_TIMES; i++) {
+            long generatedSeed = seeds.nextLong();
+            System.out.println("Generated seed: " + generatedSeed);
             Random random = new Random(generatedSeed);
-
             Collections.shuffle(allClasses, random);
-
             System.out.println("NEW CLASSES ORDER: " + allClasses);
-            for (int j = 0; j < shuffleTimes; j++) {
+            for (int j = 0; j < SHUFFLE_TIMES; j++) {
                 List<String> gatherAllTests = new ArrayList<>();
-                for (String curClass : allClasses){
-                    List<String> testsByClass = splitTests.get(curClass);
+                for (String curClass : allClasses) {
+                    List<String> testsByClass = classTests.get(curClass);
                     Collections.shuffle(testsByClass, random);
                     gatherAllTests.addAll(testsByClass);
                 }
-                if (allOrders.contains(gatherAllTests)) {
+                if (drawnOrders.add(PackedOrder.of(gatherAllTests))) {
+                    orders.add(gatherAllTests);
+                } else {
                     System.out.println("CURRENT TESTS ORDER EXISTS, SKIPPING.....");
+                }
+            }
+        }
+
+        double confidence = Double.parseDouble(Configuration.config().getProperty("parser.verify.confidence", "0"));
+        double failureRate = Double.parseDouble(Configuration.config().getProperty("parser.verify.failureRate", "0.1"));
+        boolean failFast = Configuration.config().getProperty("parser.verify.failFast", false);
+        int cleanRunsNeeded = confidence > 0 && confidence < 1 && failureRate > 0 && failureRate < 1
+                ? (int) Math.ceil(Math.log(1 - confidence) / Math.log(1 - failureRate))
+                : Integer.MAX_VALUE;
+        int wave = Math.max(1, Configuration.config().getProperty("parser.search.workers", 1));
+
+        Set<String> failedTests = new HashSet<>();
+        int verified = 0;
+        while (verified < orders.size()) {
+            if (failedTests.isEmpty() && verified >= cleanRunsNeeded) {
+                System.out.println("NO FAILURES IN " + verified + " ORDERS, " + confidence
+                        + " CONFIDENT THAT NO ORDER DEPENDENCY IS LEFT; SKIPPING " + (orders.size() - verified) + " ORDERS");
+                break;
+            }
+            // While nothing failed, a wave does not run past the orders needed for the confidence
+            int waveSize = failedTests.isEmpty() ? Math.min(wave, cleanRunsNeeded - verified) : wave;
+            List<List<String>> waveOrders = orders.subList(verified, Math.min(orders.size(), verified + waveSize));
+            List<Set<String>> waveFailedTests = runTestsInOrdersUncached(waveOrders, runner, failFast);
+            for (int i = 0; i < waveOrders.size(); i++) {
+                List<String> order = waveOrders.get(i);
+                Set<String> orderFailedTests = waveFailedTests.get(i);
+                // Only skipped after a failure with parser.verify.failFast, which ends the verification below
+                if (orderFailedTests == null) {
                     continue;
                 }
-                allOrders.add(gatherAllTests);
-                System.out.println("NEW TESTS ORDER: " + gatherAllTests);
-                Map<String, TestResult> newResultsRandom = runner.runList(gatherAllTests).get().results();
-                System.out.println("RUNNING RESULTS WITH ALL TESTS SHUFFLE: " + newResultsRandom);
-
-                for (String key : newResultsRandom.keySet()) {
-                    TestResult testResult = newResultsRandom.get(key);
-                    if (testResult.result().toString().equals("FAILURE")) {
-                        System.out.println("FOUND FAILURE IN CURRENT ORDER! " + key);
-                        failedTests.add(key);
-                        foundFail = true;
-                    }
-                    if (testResult.result().toString().equals("ERROR")) {
-                        System.out.println("FOUND ERROR IN CURRENT ORDER! " + key);
-                        failedTests.add(key);
-                        foundFail = true;
-                    }
+                System.out.println((order == allTests ? "ALL TESTS ORDER: " : "NEW TESTS ORDER: ") + order);
+                System.out.println("FAILED TESTS IN ABOVE ORDER: " + orderFailedTests);
+                for (String test : orderFailedTests) {
+                    System.out.println("FOUND FAILURE OR ERROR IN CURRENT ORDER! " + test);
                 }
+                failedTests.addAll(orderFailedTests);
+                verified++;
+            }
+            if (failFast && !failedTests.isEmpty()) {
+                System.out.println("FAIL FAST: SKIPPING " + (orders.size() - verified) + " ORDERS");
+                break;
             }
         }
-        if (foundFail) {
+        System.out.println("VERIFIED " + verified + " OF " + orders.size() + " ORDERS");
+        if (!failedTests.isEmpty()) {
             System.out.println("==========FOUND FAILURES/ERRORS IN CURRENT ABOVE ORDER! " +
                     "PLEASE REMAIN THE ORIGINAL ORDER!==========");
             System.out.println("FOUND " + failedTests.size() + " OD TESTS!!!");
             System.out.println("Failed Tests: "+failedTests);
         }
+        return failedTests;
     }
 }
@@ -6,11 +6,18 @@ public class TestClassData {
     public String className;
     public List<String> testNames;
     public double classTime;
+    // When the suite started, from the surefire report; "" if the report has none
+    public String timestamp;
 
     public TestClassData(String className, List<String> testNames, double classTime) {
+        this(className, testNames, classTime, "");
+    }
+
+    public TestClassData(String className, List<String> testNames, double classTime, String timestamp) {
         this.className = className;
         this.testNames = testNames;
         this.classTime = classTime;
+        this.timestamp = timestamp;
     }
 
     public double classTime() {
@@ -21,6 +28,10 @@ public class TestClassData {
         return className;
     }
 
+    public String timestamp() {
+        return timestamp;
+    }
+
     public List<String> testNames() {
         return testNames;
     }
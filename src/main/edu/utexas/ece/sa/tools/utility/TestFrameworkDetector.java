@@ -0,0 +1,228 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import edu.utexas.ece.sa.tools.parser.ParserPathManager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tells JUnit 4 test classes from JUnit 5 ones by the annotation descriptors in the constant pools of their class
+ * files (and those of their superclasses), so the classes are never loaded and none of their code runs.
+ *
+ * Results are kept in a small index under the cache path, checked against the size and modification time of the
+ * test's own class file. New results are appended, and the index is rewritten on load once the lines replaced by
+ * later ones outnumber the others.
+ */
+public class TestFrameworkDetector {
+    public static final Path FRAMEWORK_INDEX = Paths.get("framework-index");
+    public static final String JUNIT4 = "JUnit";
+    public static final String JUNIT5 = "JUnit5";
+    public static final String UNKNOWN = "";
+
+    private static final String JUNIT4_TEST = "Lorg/junit/Test;";
+    private static final String JUNIT5_TEST = "Lorg/junit/jupiter/api/Test;";
+    private static final int MAX_SUPERCLASSES = 32;
+
+    private final ClassLoader resources;
+    private final Path indexPath;
+    private Map<String, Entry> index;
+
+    /**
+     * @param resources Where to find the class files; only its resources are read.
+     */
+    public TestFrameworkDetector(final ClassLoader resources) {
+        this(resources, ParserPathManager.path(FRAMEWORK_INDEX));
+    }
+
+    public TestFrameworkDetector(final ClassLoader resources, final Path indexPath) {
+        this.resources = resources;
+        this.indexPath = indexPath;
+    }
+
+    /**
+     * @return {@link #JUNIT4}, {@link #JUNIT5}, or {@link #UNKNOWN} if no class in the hierarchy has a test.
+     */
+    public synchronized String framework(final String className) throws IOException {
+        final URL classFile = resources.getResource(resourceName(className));
+        if (classFile == null) {
+            return UNKNOWN;
+        }
+        final String stamp = stamp(classFile);
+        final Entry cached = index().get(className);
+        if (stamp != null && cached != null && cached.stamp.equals(stamp)) {
+            return cached.framework;
+        }
+
+        final String framework = detect(className);
+        if (stamp != null) {
+            index.put(className, new Entry(stamp, framework));
+            Files.createDirectories(indexPath.toAbsolutePath().getParent());
+            Files.write(indexPath, Collections.singletonList(className + "\t" + stamp + "\t" + framework),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        return framework;
+    }
+
+    private String detect(final String className) throws IOException {
+        String current = className;
+        for (int depth = 0; current != null && depth < MAX_SUPERCLASSES; depth++) {
+            if (current.equals("java.lang.Object")) {
+                break;
+            }
+            final InputStream in = resources.getResourceAsStream(resourceName(current));
+            if (in == null) {
+                break;
+            }
+            final ConstantPool pool;
+            try (InputStream classFile = in) {
+                pool = ConstantPool.read(classFile);
+            }
+            if (pool.strings.contains(JUNIT4_TEST)) {
+                return JUNIT4;
+            }
+            if (pool.strings.contains(JUNIT5_TEST)) {
+                return JUNIT5;
+            }
+            current = pool.superName;
+        }
+        return UNKNOWN;
+    }
+
+    private Map<String, Entry> index() throws IOException {
+        if (index == null) {
+            index = new HashMap<>();
+            if (Files.exists(indexPath)) {
+                final List<String> lines = Files.readAllLines(indexPath, StandardCharsets.UTF_8);
+                for (final String line : lines) {
+                    final String[] fields = line.split("\t", -1);
+                    // Later lines replace earlier ones; anything else was cut short by an interrupted run
+                    if (fields.length == 3) {
+                        index.put(fields[0], new Entry(fields[1], fields[2]));
+                    }
+                }
+                if (lines.size() - index.size() > index.size()) {
+                    compact();
+                }
+            }
+        }
+        return index;
+    }
+
+    // Writes one line per class, through a temporary file so an interrupted run leaves the old index whole
+    private void compact() throws IOException {
+        final List<String> lines = new ArrayList<>();
+        for (final Map.Entry<String, Entry> entry : index.entrySet()) {
+            lines.add(entry.getKey() + "\t" + entry.getValue().stamp + "\t" + entry.getValue().framework);
+        }
+        Collections.sort(lines);
+        final Path tempPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        Files.write(tempPath, lines, StandardCharsets.UTF_8);
+        Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String resourceName(final String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
+    // Only class files in directories get a stamp; classes inside jars are read again
+    private static String stamp(final URL classFile) {
+        if (!"file".equals(classFile.getProtocol())) {
+            return null;
+        }
+        try {
+            final File file = new File(classFile.toURI());
+            return file.length() + ":" + file.lastModified();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static class Entry {
+        private final String stamp;
+        private final String framework;
+
+        private Entry(final String stamp, final String framework) {
+            this.stamp = stamp;
+            this.framework = framework;
+        }
+    }
+
+    // The UTF-8 constants of a class file, plus the name of its superclass
+    private static class ConstantPool {
+        private final Set<String> strings;
+        private final String superName;
+
+        private ConstantPool(final Set<String> strings, final String superName) {
+            this.strings = strings;
+            this.superName = superName;
+        }
+
+        private static ConstantPool read(final InputStream in) throws IOException {
+            final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+            if (data.readInt() != 0xCAFEBABE) {
+                throw new IOException("Not a class file");
+            }
+            data.readUnsignedShort();
+            data.readUnsignedShort();
+            final int count = data.readUnsignedShort();
+            final String[] utf8 = new String[count];
+            final int[] classNames = new int[count];
+            for (int i = 1; i < count; i++) {
+                final int tag = data.readUnsignedByte();
+                switch (tag) {
+                    case 1: // Utf8, stored in the same modified UTF-8 that readUTF expects
+                        utf8[i] = data.readUTF();
+                        break;
+                    case 7: // Class
+                        classNames[i] = data.readUnsignedShort();
+                        break;
+                    case 8: case 16: case 19: case 20: // String, MethodType, Module, Package
+                        data.skipBytes(2);
+                        break;
+                    case 15: // MethodHandle
+                        data.skipBytes(3);
+                        break;
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                        data.skipBytes(4);
+                        break;
+                    case 5: case 6: // Long and Double take two entries
+                        data.skipBytes(8);
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+            data.readUnsignedShort(); // access flags
+            data.readUnsignedShort(); // this class
+            final int superClass = data.readUnsignedShort();
+            final String superName = superClass == 0 ? null : utf8[classNames[superClass]].replace('/', '.');
+
+            final Set<String> strings = new HashSet<>();
+            for (final String string : utf8) {
+                if (string != null) {
+                    strings.add(string);
+                }
+            }
+            return new ConstantPool(strings, superName);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense int IDs for test names, shared by every order search in the process, so that orders can be kept as
+ * arrays of IDs rather than lists of names. There is one ID per distinct test and IDs are never reused.
+ */
+public final class TestIds {
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static String[] names = new String[256];
+    private static int count = 0;
+
+    private TestIds() {
+    }
+
+    public static int id(final String test) {
+        final Integer id = ids.get(test);
+        if (id != null) {
+            return id;
+        }
+        synchronized (TestIds.class) {
+            return ids.computeIfAbsent(test, name -> {
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, count * 2);
+                }
+                names[count] = name;
+                return count++;
+            });
+        }
+    }
+
+    public static synchronized String name(final int id) {
+        return names[id];
+    }
+
+    public static synchronized int count() {
+        return count;
+    }
+}
@@ -0,0 +1,106 @@
+package edu.utexas.ece.sa.tools.utility;
+
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Monotonic (System.nanoTime) timings of the phases of one parser run, written out as a JSON timeline.
+ *
+ * Phases are timed with {@link #start(String, String)} in a try-with-resources block, or recorded after the fact
+ * with {@link #record(String, String, long, long)}. Event times are relative to the start of the run.
+ */
+public class Timeline {
+    // Keeps the timeline bounded when a search runs many thousands of orders; totals still count every event
+    private static final int MAX_EVENTS = 100000;
+
+    private static final long startNanos = System.nanoTime();
+    private static final long startMillis = System.currentTimeMillis();
+    private static final List<Event> events = new ArrayList<>();
+    private static final Map<String, PhaseTotal> totals = new LinkedHashMap<>();
+    private static int droppedEvents = 0;
+
+    public static Span start(final String phase) {
+        return start(phase, null);
+    }
+
+    public static Span start(final String phase, final String detail) {
+        return new Span(phase, detail);
+    }
+
+    public static synchronized void record(final String phase, final String detail,
+                                           final long phaseStartNanos, final long phaseEndNanos) {
+        final long duration = phaseEndNanos - phaseStartNanos;
+        totals.computeIfAbsent(phase, p -> new PhaseTotal()).add(duration);
+        if (events.size() < MAX_EVENTS) {
+            events.add(new Event(phase, detail, Thread.currentThread().getName(),
+                    phaseStartNanos - startNanos, duration));
+        } else {
+            droppedEvents++;
+        }
+    }
+
+    public static synchronized void write(final Path path) throws IOException {
+        final Map<String, Object> timeline = new LinkedHashMap<>();
+        timeline.put("startedAtMillis", startMillis);
+        timeline.put("elapsedNanos", System.nanoTime() - startNanos);
+        timeline.put("phases", totals);
+        timeline.put("droppedEvents", droppedEvents);
+        timeline.put("events", events);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Files.write(path, new GsonBuilder().setPrettyPrinting().create().toJson(timeline)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static class Span implements AutoCloseable {
+        private final String phase;
+        private final String detail;
+        private final long spanStartNanos = System.nanoTime();
+
+        private Span(final String phase, final String detail) {
+            this.phase = phase;
+            this.detail = detail;
+        }
+
+        @Override
+        public void close() {
+            record(phase, detail, spanStartNanos, System.nanoTime());
+        }
+    }
+
+    private static class Event {
+        private final String phase;
+        private final String detail;
+        private final String thread;
+        private final long startNanos;
+        private final long durationNanos;
+
+        private Event(final String phase, final String detail, final String thread,
+                      final long startNanos, final long durationNanos) {
+            this.phase = phase;
+            this.detail = detail;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+    }
+
+    private static class PhaseTotal {
+        private int count = 0;
+        private long totalNanos = 0;
+        private long maxNanos = 0;
+
+        private void add(final long durationNanos) {
+            count++;
+            totalNanos += durationNanos;
+            maxNanos = Math.max(maxNanos, durationNanos);
+        }
+    }
+}
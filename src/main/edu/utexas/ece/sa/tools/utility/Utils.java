@@ -1,8 +1,10 @@
 package edu.utexas.ece.sa.tools.utility;
 
 import edu.illinois.cs.testrunner.data.results.TestResult;
+import edu.utexas.ece.sa.tools.parser.CompilationUnitCache;
 import edu.utexas.ece.sa.tools.parser.JavaFile;
 import edu.utexas.ece.sa.tools.parser.ParserPathManager;
+import edu.utexas.ece.sa.tools.parser.TestSourceIndex;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -17,7 +19,11 @@ public class Utils {
             final Path path = ParserPathManager.backupPath1(javaFile.path(), extensions);
             final Path path2 = ParserPathManager.backupPath(javaFile.path());
             // copy the backup file(ends with *orig) to path2
+            JavaFile.flushPendingWrite(path2);
+            JavaFile.discardPendingWrite(path);
+            CompilationUnitCache.cache().invalidate(path);
             Files.copy(path2, path, StandardCopyOption.REPLACE_EXISTING);
+            TestSourceIndex.recordCreated(path);
         } catch (IOException ioException) {
             ioException.printStackTrace();
         }